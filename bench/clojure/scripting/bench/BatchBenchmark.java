@@ -0,0 +1,112 @@
+package clojure.scripting.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.ScriptException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScript;
+import clojure.scripting.ClojureScriptEngine;
+
+/*
+  One compiled script over many records: eval per Bindings vs evalAll, invoke per row vs invokeAll by columns
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode ({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class BatchBenchmark {
+
+    @Param ({"1000"})
+    private int rows;
+
+    private ClojureScript script;
+    private ClojureScript function;
+    private List<Bindings> records;
+    private Object[][] columns;
+    private Object[] results;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup () throws ScriptException {
+        ClojureScriptEngine engine = new ClojureEngineFactory ().getScriptEngine ();
+        script = engine.compile ("(* price qty)");
+        function = engine.compile ("(* price qty)", "price", "qty");
+        records = new ArrayList<Bindings> ();
+        columns = new Object [2][rows];
+        results = new Object [rows];
+        for (int i = 0; i < rows; i++) {
+            Bindings b = engine.createBindings ();
+            b.put ("price", (long) i);
+            b.put ("qty", 2L);
+            records.add (b);
+            columns[0][i] = (long) i;
+            columns[1][i] = 2L;
+        }
+        executor = Executors.newFixedThreadPool (Runtime.getRuntime ().availableProcessors ());
+    }
+
+    @TearDown
+    public void tearDown () {
+        executor.shutdown ();
+    }
+
+    @Benchmark
+    public Object evalEach () throws ScriptException {
+        Object r = null;
+        for (Bindings b : records)
+            r = script.eval (b);
+        return r;
+    }
+
+    @Benchmark
+    public Object evalAll () throws ScriptException {
+        return script.evalAll (records);
+    }
+
+    @Benchmark
+    public Object evalAllParallel () throws ScriptException {
+        return script.evalAll (records, executor);
+    }
+
+    @Benchmark
+    public Object invokeEach () throws ScriptException {
+        for (int i = 0; i < rows; i++)
+            results[i] = function.invoke (columns[0][i], columns[1][i]);
+        return results;
+    }
+
+    @Benchmark
+    public Object invokeAll () throws ScriptException {
+        function.invokeAll (columns, results);
+        return results;
+    }
+
+    @Benchmark
+    public Object invokeAllParallel () throws ScriptException {
+        function.invokeAll (columns, results, executor);
+        return results;
+    }
+}
@@ -0,0 +1,64 @@
+package clojure.scripting.bench;
+
+import java.io.StringWriter;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScript;
+import clojure.scripting.ClojureScriptEngine;
+
+/*
+  Output of a printing script under 64 concurrent evaluators: a ScriptContext with a StringWriter per eval
+  vs evalCaptured (pooled, unsynchronized buffers). Run with -prof gc to compare allocation.
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Threads (64)
+@Fork (1)
+public class CaptureBenchmark {
+
+    private ClojureScriptEngine engine;
+    private ClojureScript script;
+
+    @Setup
+    public void setup () throws ScriptException {
+        engine = new ClojureEngineFactory ().getScriptEngine ();
+        script = engine.compile ("(dotimes [i 20] (println \"line\" i)) :done");
+    }
+
+    @Benchmark
+    public Object stringWriter () throws ScriptException {
+        StringWriter out = new StringWriter ();
+        ScriptContext c = new SimpleScriptContext ();
+        c.setBindings (engine.getBindings (ScriptContext.ENGINE_SCOPE), ScriptContext.ENGINE_SCOPE);
+        c.setWriter (out);
+        script.eval (c);
+        return out.toString ();
+    }
+
+    @Benchmark
+    public Object captured () throws ScriptException {
+        return script.evalCaptured (null).getOut ();
+    }
+}
@@ -0,0 +1,136 @@
+package clojure.scripting.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.ScriptException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScript;
+import clojure.scripting.ClojureScriptEngine;
+import clojure.scripting.CollectionViews;
+
+/*
+  Multi-megabyte Java collections in Bindings: copied by the script (vec, into) vs CollectionViews;
+  a persistent result read as java.util.List vs copied into an ArrayList.
+  Run with -prof gc: copies show up as allocation per operation.
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class CollectionViewBenchmark {
+
+    @Param ({"100000", "1000000"})
+    private int size;
+
+    private ClojureScript sumCopy;
+    private ClojureScript sum;
+    private ClojureScript lookupCopy;
+    private ClojureScript lookup;
+    private ClojureScript increment;
+    private Bindings list;
+    private Bindings listView;
+    private Bindings array;
+    private Bindings arrayView;
+    private Bindings map;
+    private Bindings mapView;
+
+    @Setup
+    public void setup () throws ScriptException {
+        ClojureScriptEngine engine = new ClojureEngineFactory ().getScriptEngine ();
+        sumCopy = engine.compile ("(reduce + (vec xs))");
+        sum = engine.compile ("(reduce + xs)");
+        lookupCopy = engine.compile ("((into {} m) k)");
+        lookup = engine.compile ("(m k)");
+        increment = engine.compile ("(mapv inc xs)");
+
+        List<Object> l = new ArrayList<Object> (size);
+        long[] a = new long [size];
+        Map<Object, Object> m = new HashMap<Object, Object> (size * 2);
+        for (int i = 0; i < size; i++) {
+            l.add ((long) i);
+            a[i] = i;
+            m.put ("k" + i, (long) i);
+        }
+        list = bindings (engine, "xs", l);
+        listView = bindings (engine, "xs", CollectionViews.of (l));
+        array = bindings (engine, "xs", a);
+        arrayView = bindings (engine, "xs", CollectionViews.of (a));
+        map = bindings (engine, "m", m);
+        mapView = bindings (engine, "m", CollectionViews.of (m));
+        map.put ("k", "k" + (size / 2));
+        mapView.put ("k", "k" + (size / 2));
+    }
+
+    private static Bindings bindings (final ClojureScriptEngine engine, final String name, final Object value) {
+        Bindings b = engine.createBindings ();
+        b.put (name, value);
+        return b;
+    }
+
+    @Benchmark
+    public Object listCopy () throws ScriptException {
+        return sumCopy.eval (list);
+    }
+
+    @Benchmark
+    public Object listIterable () throws ScriptException {
+        return sum.eval (list);
+    }
+
+    @Benchmark
+    public Object listView () throws ScriptException {
+        return sum.eval (listView);
+    }
+
+    @Benchmark
+    public Object arrayCopy () throws ScriptException {
+        return sumCopy.eval (array);
+    }
+
+    @Benchmark
+    public Object arrayView () throws ScriptException {
+        return sum.eval (arrayView);
+    }
+
+    @Benchmark
+    public Object mapCopy () throws ScriptException {
+        return lookupCopy.eval (map);
+    }
+
+    @Benchmark
+    public Object mapView () throws ScriptException {
+        return lookup.eval (mapView);
+    }
+
+    @Benchmark
+    public Object resultCopy () throws ScriptException {
+        return new ArrayList<Object> ((List<?>) increment.eval (arrayView)).get (size - 1);
+    }
+
+    @Benchmark
+    public Object resultView () throws ScriptException {
+        return ((List<?>) increment.eval (arrayView)).get (size - 1);
+    }
+}
@@ -0,0 +1,75 @@
+package clojure.scripting.bench;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScriptEngine;
+import clojure.scripting.CompileReport;
+
+/*
+  compileAll of a catalog of distinct scripts, which refer to bound names (tags of the Vars of one Namespace),
+  by the caller alone (workers = 1) or with a pool of workers; compileAll runs up to one task per processor,
+  so scaling is seen on a machine with as many cores as workers.
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class CompileAllBenchmark {
+
+    @Param ({"200"})
+    private int scripts;
+
+    @Param ({"1", "2", "4"})
+    private int workers;
+
+    private ClojureScriptEngine engine;
+    private Map<String, String> sources;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup () throws ScriptException {
+        engine = new ClojureEngineFactory ().getScriptEngine ();
+        engine.put ("price", 10L);
+        engine.put ("qty", 2L);
+        engine.put ("name", "item");
+        sources = new LinkedHashMap<String, String> ();
+        for (int i = 0; i < scripts; i++)
+            sources.put ("s" + i, "(if (> (* price qty) " + i + ") (str name \"-\" (.length ^String name) \"-" + i + "\") qty)");
+        executor = workers > 1 ? Executors.newFixedThreadPool (workers - 1) : null;
+    }
+
+    @TearDown
+    public void tearDown () {
+        if (executor != null)
+            executor.shutdown ();
+    }
+
+    @Benchmark
+    public CompileReport compileAll () throws ScriptException {
+        return executor != null ? engine.compileAll (sources, executor) : engine.compileAll (sources);
+    }
+}
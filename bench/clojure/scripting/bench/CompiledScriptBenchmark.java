@@ -0,0 +1,55 @@
+package clojure.scripting.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScriptEngine;
+
+/*
+  CompiledScript.eval (Bindings): thread bindings frame with given number of Bindings entries
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode ({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class CompiledScriptBenchmark {
+
+    @Param ({"0", "10", "100"})
+    private int bindings;
+
+    private CompiledScript script;
+    private Bindings b;
+
+    @Setup
+    public void setup () throws ScriptException {
+        ClojureScriptEngine engine = new ClojureEngineFactory ().getScriptEngine ();
+        b = engine.createBindings ();
+        for (int i = 0; i < bindings; i++)
+            b.put ("v" + i, (long) i);
+        script = engine.compile ("(+ 1 2)");
+    }
+
+    @Benchmark
+    public Object eval () throws ScriptException {
+        return script.eval (b);
+    }
+}
@@ -0,0 +1,44 @@
+package clojure.scripting.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+
+/*
+  ScriptEngine.eval (String): read, compile and load of the script on every call
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode ({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class EvalBenchmark {
+
+    private ScriptEngine engine;
+
+    @Setup
+    public void setup () {
+        engine = new ClojureEngineFactory ().getScriptEngine ();
+    }
+
+    @Benchmark
+    public Object eval () throws ScriptException {
+        return engine.eval ("(+ 1 2)");
+    }
+}
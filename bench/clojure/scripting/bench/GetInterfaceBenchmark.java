@@ -0,0 +1,53 @@
+package clojure.scripting.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScriptEngine;
+
+/*
+  Invocable.getInterface: creation of the implementation and calls of its methods
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode ({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class GetInterfaceBenchmark {
+
+    private ClojureScriptEngine engine;
+    private Callable<?> callable;
+
+    @Setup
+    public void setup () throws ScriptException {
+        engine = new ClojureEngineFactory ().getScriptEngine ();
+        engine.eval ("(defn Callable#call [] 42)");
+        callable = engine.getInterface (Callable.class);
+    }
+
+    @Benchmark
+    public Object getInterface () {
+        return engine.getInterface (Callable.class);
+    }
+
+    @Benchmark
+    public Object call () throws Exception {
+        return callable.call ();
+    }
+}
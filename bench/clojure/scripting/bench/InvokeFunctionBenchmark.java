@@ -0,0 +1,79 @@
+package clojure.scripting.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScriptEngine;
+import clojure.scripting.FunctionHandle;
+
+/*
+  Invocable.invokeFunction and FunctionHandle for arities 0-8 (8 and more go through IFn.applyTo).
+  Run with -jvmArgs -Dclojure.scripting.FN_CACHE_SIZE=N to measure invokeFunction with the lookup cache.
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode ({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class InvokeFunctionBenchmark {
+
+    @Param ({"0", "1", "2", "3", "4", "5", "6", "7", "8"})
+    private int arity;
+
+    private ClojureScriptEngine engine;
+    private FunctionHandle handle;
+    private Object[] args;
+
+    @Setup
+    public void setup () throws ScriptException {
+        engine = new ClojureEngineFactory ().getScriptEngine ();
+        engine.eval ("(defn bench-fn ([] 0) ([a] 1) ([a b] 2) ([a b c] 3) ([a b c d] 4) ([a b c d e] 5)"
+                     + " ([a b c d e f] 6) ([a b c d e f g] 7) ([a b c d e f g h] 8))");
+        args = new Object [arity];
+        for (int i = 0; i < arity; i++)
+            args[i] = (long) i;
+        try {
+            handle = engine.getFunction ("bench-fn");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException (e);
+        }
+    }
+
+    @Benchmark
+    public Object invokeFunction () throws ScriptException, NoSuchMethodException {
+        return engine.invokeFunction ("bench-fn", args);
+    }
+
+    @Benchmark
+    public Object handleInvokeFunction () throws ScriptException {
+        return handle.invokeFunction (args);
+    }
+
+    @Benchmark
+    public Object handleInvoke () throws ScriptException {
+        switch (arity) {
+        case 0: return handle.invoke ();
+        case 1: return handle.invoke (args[0]);
+        case 2: return handle.invoke (args[0], args[1]);
+        case 3: return handle.invoke (args[0], args[1], args[2]);
+        case 4: return handle.invoke (args[0], args[1], args[2], args[3]);
+        default: return handle.invokeWithArguments (args);
+        }
+    }
+}
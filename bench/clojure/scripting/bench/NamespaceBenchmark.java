@@ -0,0 +1,59 @@
+package clojure.scripting.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScriptEngine;
+
+/*
+  Creation (and release) of engines and, for NS_PER_CONTEXT, of contexts.
+  Compare with -jvmArgsAppend -Dclojure.scripting.NS_PROTOTYPE=false (clojure.core referred to each Namespace).
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode ({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class NamespaceBenchmark {
+
+    private ClojureEngineFactory factory;
+    private ClojureScriptEngine engine;
+
+    @Setup
+    public void setup () {
+        factory = new ClojureEngineFactory ();
+        engine = factory.getScriptEngine ();
+    }
+
+    @Benchmark
+    public Object createEngine () {
+        ClojureScriptEngine e = factory.getScriptEngine ();
+        e.close ();
+        return e;
+    }
+
+    @Benchmark
+    public Object evalInNewContext () throws ScriptException {
+        ScriptContext c = new SimpleScriptContext ();
+        Object o = engine.eval ("1", c);
+        engine.dispose (c);
+        return o;
+    }
+}
@@ -0,0 +1,79 @@
+package clojure.scripting.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.scripting.ClojureEngineFactory;
+import clojure.scripting.ClojureScriptEngine;
+import clojure.scripting.FunctionHandle;
+
+/*
+  Numeric function with primitive hints: invokeFunction (boxed) vs invokeLong/invokeDouble (IFn$LLL, IFn$DDD)
+  of the engine (with its bindings) and of FunctionHandle (direct). Run with -prof gc to compare allocation.
+*/
+
+@State (Scope.Benchmark)
+@BenchmarkMode ({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class PrimitiveInvokeBenchmark {
+
+    private ClojureScriptEngine engine;
+    private FunctionHandle scoreL;
+    private FunctionHandle scoreD;
+    private long l1 = 1000, l2 = 3;
+    private double d1 = 0.25, d2 = 0.75;
+
+    @Setup
+    public void setup () throws ScriptException, NoSuchMethodException {
+        engine = new ClojureEngineFactory ().getScriptEngine ();
+        engine.eval ("(defn score-l ^long [^long a ^long b] (+ (* a 7) (* b 3)))");
+        engine.eval ("(defn score-d ^double [^double a ^double b] (+ (* a 0.7) (* b 0.3)))");
+        scoreL = engine.getFunction ("score-l");
+        scoreD = engine.getFunction ("score-d");
+    }
+
+    @Benchmark
+    public Object invokeFunctionLong () throws ScriptException, NoSuchMethodException {
+        return engine.invokeFunction ("score-l", l1, l2);
+    }
+
+    @Benchmark
+    public long invokeLong () throws ScriptException, NoSuchMethodException {
+        return engine.invokeLong ("score-l", l1, l2);
+    }
+
+    @Benchmark
+    public long handleInvokeLong () throws ScriptException {
+        return scoreL.invokeLong (l1, l2);
+    }
+
+    @Benchmark
+    public Object invokeFunctionDouble () throws ScriptException, NoSuchMethodException {
+        return engine.invokeFunction ("score-d", d1, d2);
+    }
+
+    @Benchmark
+    public double invokeDouble () throws ScriptException, NoSuchMethodException {
+        return engine.invokeDouble ("score-d", d1, d2);
+    }
+
+    @Benchmark
+    public double handleInvokeDouble () throws ScriptException {
+        return scoreD.invokeDouble (d1, d2);
+    }
+}
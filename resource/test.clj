@@ -4,7 +4,7 @@
   (:require (clojure [test :as t]))
   (:import (javax.script Bindings Compilable Invocable ScriptContext ScriptEngine ScriptEngineFactory
                          CompiledScript SimpleScriptContext ScriptEngineManager ScriptException)
-           (java.io ByteArrayOutputStream OutputStreamWriter)))
+           (java.io ByteArrayOutputStream OutputStreamWriter StringReader)))
 
 (def TEST_VERBOSE (Boolean/getBoolean "test.verbose"))
 
@@ -30,6 +30,17 @@
 (def NS_TEMPLATE (System/getProperty "clojure.scripting.NS_TEMPLATE" "clojure.scripting.ns-%d"))
 (def NS_IS_CONSTANT (= NS_TEMPLATE (format NS_TEMPLATE 1)))
 (def NS_PER_CONTEXT (and (not NS_IS_CONSTANT) (System/getProperty "clojure.scripting.NS_PER_CONTEXT")))
+(def EVAL_CACHE (pos? (Integer/getInteger "clojure.scripting.EVAL_CACHE_SIZE" 0)))
+(def NS_POOL (pos? (Integer/getInteger "clojure.scripting.NS_POOL_SIZE" 0)))
+(def CHECKPOINTS (Boolean/getBoolean "clojure.scripting.CHECKPOINTS"))
+(def THREAD_ISOLATED (Boolean/getBoolean "clojure.scripting.THREAD_ISOLATED"))
+
+;; Released Namespace: removed, or found but reset, when it is kept in the pool (NS_POOL_SIZE)
+(defn released? [^clojure.lang.Namespace ns]
+  (let [found (clojure.lang.Namespace/find (.getName ns))]
+    (if NS_POOL
+      (or (nil? found) (nil? (.findInternedVar found (symbol "lifecycle-x"))))
+      (nil? found))))
 
 ;; -------------------------------------------------- Factory (explicit class name)
 (def ^ScriptEngineFactory SEF0 (clojure.scripting.ClojureEngineFactory.))
@@ -49,7 +60,7 @@
 (t/is (= (TRACE SEF0 getParameter ScriptEngine/LANGUAGE) "Clojure"))
 (t/is (= (TRACE SEF0 getParameter ScriptEngine/LANGUAGE_VERSION) (clojure-version)))
 (t/is (= (TRACE SEF0 getParameter ScriptEngine/NAME) "Clojure"))
-(t/is (= (TRACE SEF0 getParameter "THREADING") "MULTITHREADED"))
+(t/is (= (TRACE SEF0 getParameter "THREADING") (if THREAD_ISOLATED "THREAD-ISOLATED" "MULTITHREADED")))
 
 (t/is (= (TRACE SEF0 getMethodCallSyntax "obj" "m" (into-array String ["arg1" "arg2"])) "(.m obj arg1 arg2)"))
 (t/is (= (TRACE SEF0 getOutputStatement nil) "(println \"null\")"))
@@ -87,9 +98,10 @@
 ;; (t/is (thrown-with-msg? ScriptException #"Unable to resolve symbol" (TRACE SE eval "(defn bad [] \n (+ \n 2 \n 2 \n x))")))
 (t/is (thrown-with-msg? ScriptException #"Syntax error compiling at" (TRACE SE eval "(defn bad [] \n (+ \n 2 \n 2 \n x))")))
 ;;(t/is (thrown-with-msg? ScriptException #"Divide by zero" (.eval SE "(/ 1 0)")))
-(t/is (thrown-with-msg? ScriptException #"Syntax error compiling at" (.eval SE "(/ 1 0)")))
+;; cached eval runs compiled script, and eval with checkpoints reads forms one by one, not Compiler.load
+(t/is (thrown-with-msg? ScriptException (if (or EVAL_CACHE CHECKPOINTS) #"Divide by zero" #"Syntax error compiling at") (.eval SE "(/ 1 0)")))
 ;;(t/is (thrown-with-msg? ScriptException #"EOF while reading" (.eval SE "(defn bad-not-read [] ((((")))
-(t/is (thrown-with-msg? ScriptException #"Syntax error reading source at" (.eval SE "(defn bad-not-read [] ((((")))
+(t/is (thrown-with-msg? ScriptException (if (or EVAL_CACHE CHECKPOINTS) #"EOF while reading" #"Syntax error reading source at") (.eval SE "(defn bad-not-read [] ((((")))
 
 (t/is (= (let [baos (ByteArrayOutputStream.)]
            (TRACE SE eval "(println (+ 2 2))" (doto (SimpleScriptContext.) (.setWriter (OutputStreamWriter. baos))))
@@ -100,6 +112,53 @@
 ;;            (clojure.string/trim (.toString baos))) "4"))
 
 
+;; TEST streaming eval: result and position of each form, stop by callback, error position, *ns* within the stream
+
+(let [^clojure.scripting.ClojureScriptEngine e SE
+      results (atom [])
+      collect (fn [stop] (reify clojure.scripting.FormCallback
+                           (evaluated [_ r line column] (swap! results conj [r line column]) (not= r stop))))
+      forms (fn [s] (StringReader. s))]
+  (t/is (= 3 (TRACE e evalForms (forms "(+ 1 2) ; three\n,, :b\n\n  (str \"c\")") (collect ::none))))
+  (t/is (= [[3 1 1] [:b 2 4] ["c" 4 3]] @results))
+  (reset! results [])
+  (t/is (= 2 (TRACE e evalForms (forms "1 2 3 4") (collect 2))))
+  (t/is (= [[1 1 1] [2 1 3]] @results))
+  (reset! results [])
+  (t/is (= 0 (TRACE e evalForms (forms " ; nothing") (collect ::none))))
+  (t/is (thrown? NullPointerException (TRACE e evalForms nil (collect ::none))))
+  (let [ex (try (TRACE e evalForms (forms "(+ 1 1)\n  (/ 1 0)\n3") (collect ::none)) (catch ScriptException ex ex))]
+    (t/is (instance? ScriptException ex))
+    (t/is (= [2 3] [(.getLineNumber ^ScriptException ex) (.getColumnNumber ^ScriptException ex)]))
+    (t/is (some #(instance? ArithmeticException %) (take-while some? (iterate #(.getCause ^Throwable %) ex))))
+    (t/is (= [[2 1 1]] @results)))
+  (reset! results [])
+  (t/is (= 3 (TRACE e evalForms (forms "(ns clojure.scripting.forms-test) (def x 42) (str *ns*)") (doto (SimpleScriptContext.) (.setBindings (.createBindings SE) ScriptContext/ENGINE_SCOPE)) (collect ::none))))
+  (t/is (= "clojure.scripting.forms-test" (first (peek @results))))
+  (t/is (= 42 @(resolve 'clojure.scripting.forms-test/x)))
+  (t/is (= DEFAULT_NS (TRACE SE eval "*ns*")))
+  (remove-ns 'clojure.scripting.forms-test))
+
+;; TEST eval cache
+
+(if EVAL_CACHE
+  (let [^clojure.scripting.ClojureEngineFactory f SEF0
+        s0 (.getEvalCacheStatistics f)
+        b (doto (.createBindings SE) (.put "x" 40))]
+    (t/is (= 42 (TRACE SE eval "(+ x 2)" b)))
+    (t/is (= 42 (TRACE SE eval "(+ x 2)" b)))
+    (t/is (= 43 (TRACE SE eval "(+ x 2)" (doto b (.put "x" 41)))))
+    (t/is (= 44 (TRACE SE eval "(+ x y)" (doto (.createBindings SE) (.put "x" 40) (.put "y" 4)))))
+    (let [s1 (.getEvalCacheStatistics f)]
+      (t/is (= 2 (- (.getHitCount s1) (.getHitCount s0))))
+      (t/is (= 2 (- (.getMissCount s1) (.getMissCount s0)))))
+    (let [^javax.script.ScriptEngine e2 (.getScriptEngine f)
+          s2 (.getEvalCacheStatistics f)]
+      (t/is (= 42 (TRACE e2 eval "(+ x 2)" (doto (.createBindings e2) (.put "x" 40)))))
+      (t/is (= 1 (- (.getMissCount (.getEvalCacheStatistics f)) (.getMissCount s2))))
+      (.close ^java.io.Closeable e2)))
+  (t/is (nil? (.getEvalCacheStatistics ^clojure.scripting.ClojureEngineFactory SEF0))))
+
 ;; TEST compile, good or bad
 
 (defn compiled-script? [v]
@@ -113,6 +172,408 @@
 
 (t/is (thrown-with-msg? ScriptException #"EOF while reading" (TRACE SEC compile "(+ 2 2")))
 
+;; TEST compile with parameters
+
+(let [^clojure.scripting.ClojureScriptEngine se SE
+      ^clojure.scripting.ClojureScript cs (TRACE se compile "(* price qty)" (into-array String ["price" "qty"]))]
+  (t/is (= ["price" "qty"] (TRACE cs getParameters)))
+  (t/is (= 42 (TRACE cs invoke (into-array Object [6 7]))))
+  (t/is (= 42 (TRACE cs eval (doto (.createBindings SE) (.put "price" 21) (.put "qty" 2)))))
+  (t/is (thrown? IllegalArgumentException (TRACE cs invoke (into-array Object [6])))))
+(t/is (thrown? ScriptException (TRACE ^clojure.scripting.ClojureScriptEngine SE compile "1" (into-array String ["a/b"]))))
+(t/is (= [] (TRACE ^clojure.scripting.ClojureScript CS2 getParameters)))
+
+;; TEST bulk compile: identical sources compiled once, failures by name with line and column, with executor
+
+(let [^clojure.scripting.ClojureScriptEngine se SE
+      sources (array-map "a" "(+ 40 2)" "b" "(* 6 7)" "c" "(+ 40 2)" "d" "(+ 1 2)\n  {:a 1 :b}" "e" "(inc (no-such-fn 1))" "f" "1\n (when)")
+      pool (java.util.concurrent.Executors/newFixedThreadPool 4)]
+  (try
+    (doseq [^clojure.scripting.CompileReport r [(TRACE se compileAll sources) (TRACE se compileAll sources pool)]]
+      (t/is (= ["a" "b" "c"] (keys (.getScripts r))))
+      (t/is (= [42 42 42] (map #(.eval ^CompiledScript %) (vals (.getScripts r)))))
+      (t/is (identical? (get (.getScripts r) "a") (get (.getScripts r) "c")))
+      (t/is (= 5 (.getSourceCount r)))
+      (t/is (= [[2 12] [1 6] [2 2]] (for [k ["d" "e" "f"]] (let [^ScriptException e (get (.getFailures r) k)] [(.getLineNumber e) (.getColumnNumber e)]))))
+      (t/is (re-find #"no-such-fn" (.getMessage ^ScriptException (get (.getFailures r) "e")))))
+    (t/is (= 0 (.size (.getScripts (TRACE se compileAll {} pool)))))
+    (finally
+      (.shutdown pool))))
+
+;; TEST batches: evalAll (same and changed binding names), invokeAll by columns, with executor
+
+(let [^clojure.scripting.ClojureScriptEngine se SE
+      ^clojure.scripting.ClojureScript cs (TRACE se compile "(+ x y)")
+      ^clojure.scripting.ClojureScript cp (TRACE se compile "(* price qty)" (into-array String ["price" "qty"]))
+      bs (fn [& kvs] (let [b (.createBindings SE)] (doseq [[k v] (partition 2 kvs)] (.put b k v)) b))
+      pool (java.util.concurrent.Executors/newFixedThreadPool 4)]
+  (try
+    (t/is (= [3 30 300 1001] (TRACE cs evalAll [(bs "x" 1 "y" 2) (bs "x" 10 "y" 20) (bs "x" 100 "y" 200 "z" 0) (bs "x" 1 "y" 1000)])))
+    (t/is (= [] (TRACE cs evalAll [])))
+    (t/is (= [2 20] (TRACE cp evalAll [(bs "price" 1 "qty" 2) (bs "price" 10 "qty" 2)])))
+    (t/is (thrown? ScriptException (TRACE cs evalAll [(bs "x" 1 "y" 2) (bs "x" 1 "y" nil)])))
+    (let [rows (vec (for [i (range 1000)] (bs "x" i "y" 1)))]
+      (t/is (= (map inc (range 1000)) (TRACE cs evalAll rows pool))))
+    (let [prices (object-array (range 1000))
+          qtys (object-array (repeat 1000 2))
+          rs (object-array 1000)]
+      (TRACE cp invokeAll (into-array [prices qtys]) rs)
+      (t/is (= (map #(* 2 %) (range 1000)) (seq rs)))
+      (java.util.Arrays/fill rs nil)
+      (TRACE cp invokeAll (into-array [prices qtys]) rs pool)
+      (t/is (= (map #(* 2 %) (range 1000)) (seq rs)))
+      (t/is (thrown? IllegalArgumentException (TRACE cp invokeAll (into-array [prices]) rs))))
+    (finally (.shutdown pool))))
+
+;; TEST on-disk class cache (CLASS_CACHE_DIR): the same script is loaded from the cache
+
+(if (System/getProperty "clojure.scripting.CLASS_CACHE_DIR")
+  (let [^clojure.scripting.ClojureEngineFactory f SEF0
+        s0 (.getClassCacheStatistics f)
+        script (str "(let [f (fn [x] (* x 2))] (f " (System/nanoTime) "))")]
+    (t/is (number? (.eval (TRACE SEC compile script))))
+    (t/is (= (.eval (TRACE SEC compile script)) (.eval (TRACE SEC compile script))))
+    (let [s1 (.getClassCacheStatistics f)]
+      (t/is (= 2 (- (.getHitCount s1) (.getHitCount s0))))
+      (t/is (= 1 (- (.getMissCount s1) (.getMissCount s0))))))
+  (t/is (nil? (.getClassCacheStatistics ^clojure.scripting.ClojureEngineFactory SEF0))))
+
+;; TEST specialization by classes of bound values (SPECIALIZATIONS): a variant per classes, then the generic one
+
+(let [^clojure.scripting.ClojureScript cs (TRACE SEC compile "(.length s)")
+      ^clojure.scripting.ClojureScript co (TRACE SEC compile "(.toString o)")
+      b (.createBindings SE)
+      os [1 1.0 "s" :k 'sym [1] {1 1} #{1} '(1) 1N 1M \c (StringBuilder. "sb")]]
+  (t/is (= 3 (TRACE cs eval (doto b (.put "s" "abc")))))
+  (t/is (= 4 (TRACE cs eval (doto b (.put "s" (StringBuilder. "abcd"))))))
+  (t/is (= 5 (TRACE cs eval (doto b (.put "s" "abcde")))))
+  (let [s (TRACE cs getSpecializationStatistics)
+        generic (< (.getLimit s) 2)]
+    (t/is (= (min 2 (.getLimit s)) (.getVariantCount s)))
+    (t/is (= generic (.isGeneric s)))
+    (t/is (= generic (pos? (.getReflectiveCallCount s)))))
+  (t/is (= (map str os) (for [o os] (.eval co (doto b (.put "o" o))))))
+  (let [s (TRACE co getSpecializationStatistics)]
+    (t/is (<= (.getVariantCount s) (.getLimit s)))
+    (when (< (.getLimit s) (count os))
+      (t/is (.isGeneric s))
+      (t/is (pos? (.getReflectiveSiteCount s)))
+      (t/is (pos? (.getReflectiveCallCount s))))))
+
+;; TEST retained size: form is released, when no recompilation is possible; functions of released Namespaces are evicted
+
+(let [^clojure.scripting.ClojureScriptEngine se SE
+      ^clojure.scripting.ClojureScript cp (TRACE se compile "(* retained-a retained-b)" (into-array String ["retained-a" "retained-b"]))
+      ^clojure.scripting.ClojureScript cs (TRACE se compile "(.length ^CharSequence s)")]
+  (t/is (= 42 (TRACE cp invoke (into-array Object [21 2]))))
+  (let [r (TRACE cp getRetainedSize)]
+    (t/is (= [1 1] [(.getNamespaceCount r) (.getVariantCount r)]))
+    (t/is (pos? (.getClassCount r)))
+    (t/is (= (boolean NS_PER_CONTEXT) (pos? (.getFormSize r)))))
+  (t/is (= 3 (TRACE cs eval (doto (.createBindings SE) (.put "s" "abc")))))
+  (t/is (= (boolean (or NS_PER_CONTEXT (pos? (.getLimit (.getSpecializationStatistics cs))))) (pos? (.getFormSize (TRACE cs getRetainedSize)))))
+  (when NS_PER_CONTEXT
+    (let [ctx (doto (SimpleScriptContext.) (.setBindings (doto (.createBindings SE) (.put "retained-a" 1) (.put "retained-b" 2)) ScriptContext/ENGINE_SCOPE))]
+      (t/is (= 2 (TRACE cp eval ctx)))
+      (t/is (= 2 (.getNamespaceCount (TRACE cp getRetainedSize))))
+      (TRACE se dispose ctx)
+      (t/is (= 1 (loop [i 0]
+                   (System/gc)
+                   (let [n (.getNamespaceCount (.getRetainedSize cp))]
+                     (if (or (= n 1) (= i 20)) n (do (Thread/sleep 50) (recur (inc i)))))))))))
+
+;; TEST class loaders of compiled scripts (LOADER_POLICY): a loader per script or shared, classes defined and unloaded
+
+(when-not (System/getProperty "clojure.scripting.CLASS_CACHE_DIR") ; cached classes have loaders of their own
+  (let [^clojure.scripting.ClojureEngineFactory f SEF0
+        l0 (.getClassLoaderCount f)
+        d0 (.getDefinedClassCount f)
+        scripts (doall (for [i (range 3)] (TRACE SEC compile (str "(fn [] " i ")"))))]
+    (t/is (= [0 1 2] (for [^CompiledScript cs scripts] ((.eval cs)))))
+    (t/is (<= (+ d0 9) (.getDefinedClassCount f))) ; wrapper, script and inner functions
+    (if (= "script" (System/getProperty "clojure.scripting.LOADER_POLICY" "script"))
+      (t/is (= (+ l0 3) (.getClassLoaderCount f)))
+      (t/is (<= (.getClassLoaderCount f) (+ l0 (if (< (Integer/getInteger "clojure.scripting.LOADER_GENERATION_SIZE" 1024) 9) 3 1)))))
+    (t/is (<= 0 (.getUnloadedClassCount f) (.getDefinedClassCount f)))))
+
+;; TEST warm-up: runtime, libs, scripts, Namespaces of the pool
+
+(let [r (.get (TRACE ^clojure.scripting.ClojureEngineFactory SEF0 warmUp ["clojure.set" "no.such.lib"] ["(+ 1 2)" "(+ 1"]))]
+  (t/is (= 2 (.getScriptCount r)))
+  (t/is (= 1 (.getCompiledCount r)))
+  (t/is (= #{"no.such.lib" "(+ 1"} (set (keys (.getFailures r)))))
+  (t/is (pos? (.getRuntimeMillis r))))
+
+;; TEST instrumentation: listener, built-in metrics (METRICS)
+
+(let [^clojure.scripting.ClojureEngineFactory f SEF0
+      events (atom [])
+      l (reify clojure.scripting.ScriptListener
+          (compiled [_ nanos failed] (swap! events conj [:compiled failed]))
+          (called [_ op nanos failed] (swap! events conj [(keyword (str op)) failed]))
+          (bound [_ size] (swap! events conj [:bound (pos? size)])))]
+  (TRACE f addListener l)
+  (try
+    (TRACE SE eval "(+ 2 2)")
+    (t/is (thrown? ScriptException (TRACE SE eval "(/ 1 0)")))
+    (TRACE SEC compile "(+ 2 2)")
+    (t/is (thrown? ScriptException (TRACE SEC compile "(+ 2 2")))
+    (TRACE SEI invokeFunction "+" (into-array Object [2 2]))
+    (finally (TRACE f removeListener l)))
+  (TRACE SE eval "(+ 2 2)")
+  (t/is (= [[:bound true] [:EVAL false] [:bound true] [:EVAL true] [:compiled false] [:compiled true] [:bound true] [:INVOKE_FUNCTION false]]
+           (remove #(= [:COMPILE false] %) @events)))
+  (if (Boolean/getBoolean "clojure.scripting.METRICS")
+    (let [m (.getMetrics f)
+          server (java.lang.management.ManagementFactory/getPlatformMBeanServer)
+          name (javax.management.ObjectName. "clojure.scripting:type=EngineMetrics")]
+      (t/is (pos? (.getCallCount m)))
+      (t/is (pos? (.getFailureCount m)))
+      (t/is (pos? (.getLatencyPercentileMicros m "EVAL" 99.0)))
+      (t/is (pos? (.getCompiledClassCount m)))
+      (t/is (= (.getCallCount m) (.getAttribute server name "CallCount"))))
+    (t/is (nil? (.getMetrics f)))))
+
+;; TEST async: results, conveyed thread bindings, failures, bounded queue
+
+(def ^:dynamic *conveyed* 0)
+
+(let [^clojure.scripting.ClojureScriptEngine se SE
+      ^clojure.scripting.ClojureScript cp (TRACE se compile "(* price qty)" (into-array String ["price" "qty"]))
+      concurrency (Integer/getInteger "clojure.scripting.ASYNC_CONCURRENCY" (.availableProcessors (Runtime/getRuntime)))
+      queue-size (Integer/getInteger "clojure.scripting.ASYNC_QUEUE_SIZE" 1024)
+      latch (java.util.concurrent.CountDownLatch. 1)
+      pool (java.util.concurrent.Executors/newCachedThreadPool)]
+  (t/is (= 4 (.get (TRACE se evalAsync "(+ 2 2)"))))
+  (t/is (= 42 (.get (TRACE cp evalAsync (doto (.createBindings SE) (.put "price" 21) (.put "qty" 2))))))
+  (t/is (= 4 (.get (TRACE se invokeFunctionAsync "+" (into-array Object [2 2])))))
+  (t/is (= 42 (binding [*conveyed* 42] (.get (TRACE se evalAsync "clojure.scripting/*conveyed*")))))
+  (t/is (thrown-with-msg? java.util.concurrent.ExecutionException #"ScriptException" (.get (TRACE se evalAsync "(/ 1 0)"))))
+  (try
+    (TRACE se setExecutor pool)
+    (let [b (doto (.createBindings SE) (.put "latch" latch))
+          fs (doall (repeatedly (+ concurrency queue-size)
+                                #(.evalAsync se "(.await ^java.util.concurrent.CountDownLatch latch)" ^Bindings b)))]
+      (t/is (thrown? java.util.concurrent.RejectedExecutionException (TRACE se evalAsync "1")))
+      (.countDown latch)
+      (t/is (every? nil? (map #(.get ^java.util.concurrent.Future %) fs)))
+      (t/is (= 1 (.get (TRACE se evalAsync "1")))))
+    (finally
+      (.setExecutor se nil)
+      (.shutdown pool))))
+
+;; TEST threading: default context per thread (THREAD_ISOLATED) or shared, GLOBAL_SCOPE shared, ConcurrentBindings allow nulls
+
+(let [^clojure.scripting.ClojureScriptEngine e (.getScriptEngine SEF)
+      g (clojure.scripting.ConcurrentBindings.)
+      in-thread (fn [f] (let [p (promise)]
+                          (.start (Thread. #(deliver p (try (f) (catch Throwable t t)))))
+                          (deref p 10000 ::timeout)))]
+  (try
+    (TRACE g put "n" nil)
+    (t/is (and (TRACE g containsKey "n") (nil? (TRACE g get "n")) (= 1 (.size g))))
+    (t/is (thrown? IllegalArgumentException (TRACE g put "" 1)))
+    (t/is (thrown? NullPointerException (TRACE g get nil)))
+    (t/is (= {"n" nil "g" 1} (into {} (doto g (.put "g" 1)))))
+    (TRACE e setBindings g ScriptContext/GLOBAL_SCOPE)
+    (TRACE e put "x" 1)
+    (t/is (= [1 1 nil] (TRACE e eval "[x g n]")))
+    (let [[c r] (in-thread #(do (.put e "x" 2) [(.getContext e) (.eval e "[x g]")]))]
+      (t/is (= [2 1] r))
+      (t/is (= (not THREAD_ISOLATED) (identical? c (TRACE e getContext))))
+      (t/is (= (if THREAD_ISOLATED 1 2) (TRACE e get "x"))))
+    (t/is (= 3 (in-thread #(do (.setBindings e (doto (.createBindings e) (.put "g" 3)) ScriptContext/GLOBAL_SCOPE) (.eval e "g")))))
+    (t/is (= 3 (TRACE e eval "g")))
+    (when (and THREAD_ISOLATED NS_PER_CONTEXT)
+      (t/is (not= (TRACE e eval "*ns*") (in-thread #(.eval e "(def in-thread 1) *ns*"))))
+      (t/is (nil? (TRACE e eval "(resolve 'in-thread)"))))
+    (when THREAD_ISOLATED
+      (let [n 8
+            pool (java.util.concurrent.Executors/newFixedThreadPool n)
+            cs (TRACE e compile "(+ i (count (str j)))")]
+        (try
+          (t/is (= (for [i (range n)] (* 100 i))
+                   (map #(.get ^java.util.concurrent.Future %)
+                        (.invokeAll pool (for [i (range n)]
+                                           (fn [] (reduce + (for [j (range 100)]
+                                                              (do (.put e "i" i) (.put e "j" (when (odd? j) j))
+                                                                  (- (.eval cs) (count (str (when (odd? j) j)))))))))))))
+          (finally
+            (.shutdown pool)))))
+    (when THREAD_ISOLATED ; the context of a thread does not keep its engine
+      (let [r (java.lang.ref.WeakReference. (doto (.getScriptEngine SEF) (.put "y" 1) (.eval "y")))]
+        (t/is (loop [i 0]
+                (System/gc)
+                (cond (nil? (.get r)) true (= i 20) false :else (do (Thread/sleep 50) (recur (inc i))))))))
+    (finally
+      (.close e))))
+
+;; TEST captured output: value with *out* and *err*, writers of the context are not used, recent output (CAPTURE_RING_SIZE)
+
+(let [^clojure.scripting.ClojureScriptEngine se (.getScriptEngine SEF)
+      baos (ByteArrayOutputStream.)
+      ring (Integer/getInteger "clojure.scripting.CAPTURE_RING_SIZE" 0)
+      big (apply str (repeat 100000 \a))]
+  (try
+    (.setWriter (.getContext se) (OutputStreamWriter. baos))
+    (let [^clojure.scripting.CapturedResult r (TRACE se evalCaptured "(println \"out\") (binding [*out* *err*] (print \"err\")) (flush) 42")]
+      (t/is (= [42 "out\n" "err"] [(.getValue r) (.getOut r) (.getErr r)])))
+    (t/is (= "x=1\n" (.getOut (TRACE se evalCaptured "(println (str \"x=\" x))" (doto (.createBindings se) (.put "x" 1))))))
+    (t/is (= "2\n" (.getOut (TRACE ^clojure.scripting.ClojureScript (.compile se "(prn (inc x))") evalCaptured (doto (.createBindings se) (.put "x" 1))))))
+    (t/is (= big (.getOut (TRACE se evalCaptured "(print (apply str (repeat 100000 \\a)))"))))
+    (t/is (thrown? ScriptException (TRACE se evalCaptured "(print 1) (/ 1 0)")))
+    (t/is (= "tail" (.getOut (TRACE se evalCaptured "(print \"tail\") 1"))))
+    (t/is (= "" (.getOut (TRACE se evalCaptured "1"))))
+    (t/is (= "in" (.getOut (TRACE se evalCaptured "(future (Thread/sleep 100) (print \"late\")) @(future (print \"in\"))"))))
+    (Thread/sleep 300)
+    (t/is (= "next" (.getOut (TRACE se evalCaptured "(print \"next\")")))) ; late output of the previous call is dropped
+    (.flush (.getWriter (.getContext se)))
+    (t/is (= 0 (.size baos)))
+    (if (pos? ring)
+      (let [recent (TRACE se getRecentOutput)]
+        (t/is (= (min ring (+ (count "out\nerrx=1\n2\n") (count big) (count "tailinnext"))) (count recent)))
+        (t/is (let [tail "aaatailinnext"] (if (< (count recent) (count tail)) (.endsWith tail recent) (.endsWith ^String recent tail)))))
+      (t/is (nil? (TRACE se getRecentOutput))))
+    (finally
+      (.close se))))
+
+;; TEST script repository: compile on first use, first root wins, refresh recompiles only changed scripts, removes deleted ones
+
+(let [^clojure.scripting.ClojureScriptEngine se (.getScriptEngine SEF)
+      dir (doto (java.io.File/createTempFile "scripts" "") (.delete) (.mkdirs))
+      cp (doto (java.io.File. dir "cp/scripts") (.mkdirs))
+      put (fn [^java.io.File f ^String s t] (.mkdirs (.getParentFile f)) (spit f s) (.setLastModified f t))
+      repo (doto (clojure.scripting.ScriptRepository. se)
+             (.addDirectory (java.io.File. dir "d"))
+             (.addClasspath (java.net.URLClassLoader. (into-array [(.toURL (java.io.File. dir "cp"))]) nil) "scripts"))
+      ev (fn [n] (.eval ^clojure.scripting.ClojureScript (.get repo n)))]
+  (try
+    (put (java.io.File. dir "d/a.clj") "1" 10000)
+    (put (java.io.File. dir "d/x/b.clj") "(+ 1 1)" 10000)
+    (put (java.io.File. cp "a.clj") ":cp" 10000)
+    (put (java.io.File. cp "c.clj") ":c" 10000)
+    (put (java.io.File. cp "c.txt") ":txt" 10000)
+    (t/is (= #{"a" "x/b" "c"} (set (TRACE repo names))))
+    (t/is (= [1 2 :c] (map ev ["a" "x/b" "c"])))
+    (t/is (nil? (TRACE repo get "missing")))
+    (t/is (thrown? IllegalArgumentException (TRACE repo get "../d/a")))
+    (let [b (.get repo "x/b")]
+      (put (java.io.File. dir "d/a.clj") "11" 20000)
+      (.delete (java.io.File. cp "c.clj"))
+      (let [^clojure.scripting.CompileReport r (TRACE repo refresh)]
+        (t/is (= #{"a"} (set (keys (.getScripts r))))))
+      (t/is (= 11 (ev "a")))
+      (t/is (identical? b (.get repo "x/b")))
+      (t/is (= #{"a" "x/b"} (set (TRACE repo loaded))))
+      (put (java.io.File. dir "d/a.clj") "(" 30000)
+      (t/is (= #{"a"} (set (keys (.getFailures (TRACE repo refresh))))))
+      (t/is (empty? (.getFailures (TRACE repo refresh))))
+      (t/is (= 11 (ev "a")))
+      (put (java.io.File. dir "d/a.clj") "(no-such-fn 1)" 35000)
+      (t/is (= #{"a"} (set (keys (.getFailures (TRACE repo refresh))))))
+      (t/is (= 11 (ev "a")))
+      (.delete (java.io.File. dir "d/a.clj"))
+      (TRACE repo refresh)
+      (t/is (= :cp (ev "a")))
+      (put (java.io.File. dir "d/x/b.clj") "(+ 2 2)" 40000)
+      (TRACE repo startPolling 10)
+      (loop [i 0] (when (and (< i 200) (not= 4 (ev "x/b"))) (Thread/sleep 10) (recur (inc i))))
+      (t/is (= 4 (ev "x/b"))))
+    (finally
+      (.close repo)
+      (.close se)
+      (doseq [^java.io.File f (reverse (file-seq dir))] (.delete f)))))
+
+;; TEST runtime pool: runtimes are independent of each other and of the host, by tenant, discard gives a new runtime
+
+(let [pool (clojure.scripting.RuntimePool. 2)]
+  (try
+    (let [^javax.script.ScriptEngine a (TRACE pool getScriptEngine)
+          ^javax.script.ScriptEngine b (TRACE pool getScriptEngine)]
+      (TRACE a eval "(intern 'clojure.core 'pool-x 42)")
+      (t/is (= 42 (.eval a "clojure.core/pool-x")))
+      (t/is (nil? (.eval b "(resolve 'clojure.core/pool-x)")))
+      (t/is (nil? (resolve 'clojure.core/pool-x)))
+      (t/is (= 42 (.eval ^javax.script.ScriptEngine (TRACE pool getScriptEngine) "clojure.core/pool-x")))
+      (t/is (not (identical? clojure.lang.RT (.eval a "clojure.lang.RT"))))
+      (t/is (= "A" (.eval a "(require 'clojure.string) (clojure.string/upper-case \"a\")")))
+      (t/is (= 3 @(future (.eval b "(let [[x y] [1 2]] (+ x y))"))))
+      (t/is (= (.indexOf pool "tenant") (.indexOf pool (String. "tenant"))))
+      (t/is (= 1 (.eval ^javax.script.ScriptEngine (TRACE pool getScriptEngine "tenant") "(intern 'clojure.core 'pool-y 1) 1")))
+      (t/is (= 1 (.eval ^javax.script.ScriptEngine (TRACE pool getScriptEngine (String. "tenant")) "clojure.core/pool-y")))
+      (let [^java.util.concurrent.ExecutorService solo (.eval ^javax.script.ScriptEngine (.getScriptEngine pool "tenant")
+                                                             "@(future 1) clojure.lang.Agent/soloExecutor")]
+        (TRACE pool discard (.indexOf pool "tenant"))
+        (t/is (.isShutdown solo)))
+      (t/is (nil? (.eval ^javax.script.ScriptEngine (TRACE pool getScriptEngine "tenant") "(resolve 'clojure.core/pool-y)"))))
+    (finally
+      (.close pool))))
+
+;; TEST data mode: readData reads EDN without evaluation, eval of literal-only sources (DATA_MODE=auto, DATA_CACHE_SIZE)
+
+(let [^clojure.scripting.ClojureScriptEngine se (.getScriptEngine SEF)
+      auto? (= "auto" (System/getProperty "clojure.scripting.DATA_MODE"))
+      cache? (pos? (Integer/getInteger "clojure.scripting.DATA_CACHE_SIZE" 0))
+      config "{:name \"rules\" :limits [1 2.5 3/4] :tags #{:a :b} :at #inst \"2020-01-01T00:00:00Z\"}"]
+  (try
+    (t/is (= {:name "rules" :limits [1 2.5 3/4] :tags #{:a :b} :at #inst "2020-01-01T00:00:00Z"} (TRACE se readData config)))
+    (t/is (= '(+ 1 2) (TRACE se readData "(+ 1 2)")))
+    (t/is (= [1 :b] (TRACE se readData (StringReader. "1 [1 :b]"))))
+    (t/is (nil? (TRACE se readData "  ")))
+    (t/is (thrown? ScriptException (TRACE se readData "#=(+ 1 2)")))
+    (t/is (thrown? ScriptException (TRACE se readData "#(inc %)")))
+    (t/is (= 2 (try (.readData se "{:a 1}\n[1 #=(x)]\n") (catch ScriptException e (.getLineNumber e)))))
+    (t/is (= (.readData se config) (TRACE se eval config)))
+    (t/is (= 3 (TRACE se eval "[1 2] (+ 1 2)")))
+    (t/is (= [1 2] (TRACE se eval "[1 (inc 1)]")))
+    (t/is (= {:a 2} (TRACE se eval "{:a x}" (doto (.createBindings se) (.put "x" 2)))))
+    (t/is (= {:a 1} (TRACE se eval (StringReader. "{:a 1}"))))
+    (t/is (thrown? ScriptException (TRACE se eval "{:a 1")))
+    (t/is (= (if auto? cache? EVAL_CACHE) (identical? (.eval se config) (.eval se config)))) ; same value of a cached literal or compiled script
+    (t/is (= cache? (some? (TRACE SEF getDataCacheStatistics))))
+    (when (and auto? cache?) ; code, which starts with a symbol, is not read as data first; tagged literals by *data-readers*
+      (let [misses #(.getMissCount (.getDataCacheStatistics SEF))
+            m (misses)]
+        (t/is (= [2 "clojure.core"] (TRACE se eval "[x (str (ns-name (the-ns 'clojure.core)))]" (doto (.createBindings se) (.put "x" 2)))))
+        (t/is (= 2 (TRACE se eval "x" (doto (.createBindings se) (.put "x" 2)))))
+        (t/is (= m (misses)))
+        (t/is (= [:a nil true -1 \c "s" 1] (TRACE se eval "[:a nil true -1 \\c \"s\" 1]")))
+        (t/is (= (inc m) (misses)))
+        (t/is (= [[1] [2]] [(binding [*data-readers* {'t/v vector}] (.readData se "#t/v 1"))
+                            (binding [*data-readers* {'t/v (comp vector inc)}] (.readData se "#t/v 1"))]))))
+    (finally
+      (.close se))))
+
+;; TEST deadlines: engine and per call timeouts, interrupt is cleared, checkpoints stop busy loops (CHECKPOINTS)
+
+(let [^clojure.scripting.ClojureScriptEngine e (.getScriptEngine SEF)
+      timed-out? (fn [f] (try (f) false (catch clojure.scripting.ScriptTimeoutException ex (.getTimeoutMillis ex))))]
+  (try
+    (t/is (= 0 (TRACE e getTimeout)))
+    (t/is (thrown? IllegalArgumentException (TRACE e setTimeout -1)))
+    (TRACE e eval "(defn nap [] (Thread/sleep 10000))")
+    (TRACE e setTimeout 100)
+    (t/is (= 100 (timed-out? #(TRACE e eval "(Thread/sleep 10000)"))))
+    (t/is (not (Thread/interrupted)))
+    (t/is (= 100 (timed-out? #(TRACE e invokeFunction "nap" (object-array 0)))))
+    (t/is (= 100 (timed-out? #(.eval (TRACE e compile "(nap)")))))
+    (t/is (= 4 (TRACE e eval "(+ 2 2)")))
+    (TRACE e setTimeout 0)
+    (t/is (= 50 (timed-out? #(TRACE e eval "(nap)" (doto (.createBindings e) (.put clojure.scripting.ClojureScriptEngine/TIMEOUT 50))))))
+    (t/is (= :done (TRACE e eval "(Thread/sleep 10) :done")))
+    (if CHECKPOINTS
+      (let [c (doto (SimpleScriptContext.) (.setBindings (.createBindings e) ScriptContext/ENGINE_SCOPE) (.setAttribute clojure.scripting.ClojureScriptEngine/TIMEOUT 100 ScriptContext/ENGINE_SCOPE))]
+        (t/is (= 100 (timed-out? #(TRACE e eval "(loop [] (recur))" c))))
+        (t/is (= 100 (timed-out? #(TRACE e eval "(while true)" c))))
+        (t/is (= 100 (timed-out? #(TRACE e eval "(.run (reify Runnable (run [_] (loop [] (recur)))))" c))))
+        (t/is (= [:b {:x 2}] (TRACE e eval "[(case 3 (1 2) :a 3 :b (quote x) :c) (let [{:keys [a]} {:a 1}] {:x (inc a)})]" c)))
+        (t/is (= [false 2] (TRACE e eval "(let [when (fn [a b] [a b])] (when false 2))" c)))
+        (t/is (= [[nil 1] [false 2]] (TRACE e eval "[((fn [or] (or nil 1)) vector) (letfn [(and [a b] [a b])] (and false 2))]" c)))
+        (TRACE e eval "(defmacro env-locals [] (vec (for [[s b] &env] [(list 'quote s) (list 'quote (.-tag ^clojure.lang.Compiler$LocalBinding b))])))" c)
+        (t/is (= '[[a String]] (TRACE e eval "(let [^String a \"x\"] (env-locals))" c)))))
+    (finally
+      (.close e))))
+
 ;; TEST eval of compiled, good or bad, with bindings and context
 
 ;; (TRACE CS eval SEB)
@@ -154,6 +615,45 @@
 
 (TRACE CS4 eval (doto (.createBindings SE) (.put "x" 12) (.put "y" 30)))
 
+;; TEST bindings: changed set of names, ENGINE_SCOPE over GLOBAL_SCOPE
+
+(t/is (= 42 (TRACE CS4 eval (doto (.createBindings SE) (.put "x" 40) (.put "y" 2)))))
+(t/is (= 43 (TRACE CS4 eval (doto (.createBindings SE) (.put "x" 40) (.put "y" 3) (.put "z" 0)))))
+(t/is (= 44 (TRACE CS4 eval (doto (.createBindings SE) (.put "y" 4) (.put "x" 40)))))
+(t/is (= 3 (TRACE CS4 eval (doto (SimpleScriptContext.)
+                              (.setBindings (doto (.createBindings SE) (.put "x" 1)) ScriptContext/ENGINE_SCOPE)
+                              (.setBindings (doto (.createBindings SE) (.put "x" 100) (.put "y" 2)) ScriptContext/GLOBAL_SCOPE)))))
+
+(let [^javax.script.ScriptEngine e (.getScriptEngine SEF)
+      b (doto (.createBindings e) (.put "redef-x" 1))]
+  (try
+    (TRACE e eval "(def redef-x 5) redef-x" b)
+    (t/is (= 2 (TRACE e eval "(+ redef-x 1)" b)))
+    (t/is (= 2 (TRACE e eval "(+ redef-x 1)" b)))
+    (finally
+      (.close ^java.io.Closeable e))))
+
+;; TEST collection views: Java Lists, Maps and primitive arrays as read-only Clojure collections, updates return copies
+
+(let [l (java.util.ArrayList. [1 2 3])
+      a (long-array [1 2 3])
+      m (java.util.HashMap. {"a" 1})
+      b (doto (.createBindings SE)
+          (.put "l" (clojure.scripting.CollectionViews/of l)) (.put "a" (clojure.scripting.CollectionViews/of a)) (.put "m" (clojure.scripting.CollectionViews/of m))
+          (.put "jl" l))]
+  (t/is (= [1 2 3] (clojure.scripting.CollectionViews/of l) (clojure.scripting.CollectionViews/of a)))
+  (t/is (= [6 4.5 3] (map #(reduce + (clojure.scripting.CollectionViews/of %)) [a (double-array [1.5 3]) (int-array [1 2])])))
+  (t/is (= {"a" 1} (clojure.scripting.CollectionViews/of m)))
+  (t/is (let [v [1]] (identical? v (clojure.scripting.CollectionViews/of v))))
+  (t/is (= "abc" (clojure.scripting.CollectionViews/of "abc")))
+  (t/is (= [true 3 [1 2 3 4] 6 1 [2 3]] (TRACE SE eval "[(vector? l) (l 2) (conj l 4) (reduce + a) (m \"a\") (subvec a 1)]" b)))
+  (t/is (= {"a" 1 "b" 2} (TRACE SE eval "(assoc m \"b\" 2)" b)))
+  (t/is (= [1] (TRACE (TRACE SEC compile "(m \"a\")") evalAll [b])))
+  (t/is (= 3 (TRACE ^clojure.scripting.ClojureScript (.compile ^clojure.scripting.ClojureScriptEngine SE "(count l)" (into-array String ["l"])) eval b)))
+  (t/is (= [false true] (TRACE SE eval "[(vector? jl) (instance? java.util.ArrayList jl)]" b))) ; other values as is
+  (t/is (and (= [1 2 3] l) (= {"a" 1} m)))
+  (let [b (doto (.createBindings SE) (.put "im" (clojure.scripting.CollectionViews/of (doto (java.util.HashMap.) (.put (int 1) "one") (.put (short 2) "two")))))]
+    (t/is (= ["one" "two" true [1 "one"] nil :none] (TRACE SE eval "[(get im 1) (im 2) (contains? im 1) (find im 1) (get im 3) (get im 1.0 :none)]" b)))))
 
 ;; TEST invokeFunction, good or bad
 (t/is (= (TRACE SEI invokeFunction "four" (into-array Object [2 2])) 4))
@@ -170,6 +670,53 @@
 
 (t/is (= (TRACE SEI invokeFunction "reflect" (into-array Object [2 2])) 4))
 
+;; TEST getFunction: handle follows redefinitions and unmapping
+
+(def FN_CACHE (pos? (Integer/getInteger "clojure.scripting.FN_CACHE_SIZE" 0)))
+
+(let [^clojure.scripting.ClojureScriptEngine e SE]
+  (TRACE SE eval "(defn handled [a b] (+ a b))")
+  (let [^clojure.scripting.FunctionHandle h (TRACE e getFunction "handled")]
+    (t/is (= "handled" (.getName h)))
+    (t/is (= 4 (.invoke h 2 2)))
+    (t/is (= 4 (.invokeWithArguments h (into-array Object [2 2]))))
+    (t/is (= 4 (.invokeFunction h (into-array Object [2 2]))))
+    (TRACE SE eval "(defn handled [a b] (* a b 10))")
+    (t/is (= 40 (.invoke h 2 2)))
+    (t/is (thrown? ScriptException (.invoke h 2))))
+  (t/is (= 40 (TRACE SEI invokeFunction "handled" (into-array Object [2 2]))))
+  (TRACE SE eval "(ns-unmap *ns* 'handled)")
+  (t/is (thrown? NoSuchMethodException (TRACE SEI invokeFunction "handled" (into-array Object [2 2]))))
+  (t/is (thrown? NoSuchMethodException (TRACE e getFunction "handled")))
+  (t/is (thrown? NoSuchMethodException (TRACE e getFunction "*ns*")))
+  (t/is (= 4 (.invoke (TRACE e getFunction "clojure.core/+") 2 2)))
+  (if FN_CACHE
+    (t/is (pos? (.getHitCount (.getFunctionCacheStatistics e))))
+    (t/is (nil? (.getFunctionCacheStatistics e)))))
+
+;; TEST primitive invocation: functions with primitive hints (IFn$LL, IFn$DDD, ...) and boxed fallback
+
+(let [^clojure.scripting.ClojureScriptEngine e SE]
+  (TRACE SE eval "(defn prim-l (^long [] 7) (^long [^long a] (inc a)) (^long [^long a ^long b ^long c ^long d] (+ a b c d)))")
+  (TRACE SE eval "(defn prim-d ^double [^double a ^double b] (* a b))")
+  (TRACE SE eval "(defn boxed [& xs] (apply + xs))")
+  (t/is (= 7 (TRACE e invokeLong "prim-l")))
+  (t/is (= 42 (TRACE e invokeLong "prim-l" 41)))
+  (t/is (= 10 (TRACE e invokeLong "prim-l" 1 2 3 4)))
+  (t/is (= 1.5 (TRACE e invokeDouble "prim-d" 0.5 3.0)))
+  (t/is (= 6 (TRACE e invokeLong "boxed" 1 2 3)))
+  (t/is (= 6.0 (TRACE e invokeDouble "boxed" 1.0 2.0 3.0)))
+  (t/is (thrown? ScriptException (TRACE e invokeLong "prim-d" 1 2 3)))
+  (t/is (thrown? NoSuchMethodException (TRACE e invokeLong "no-such-fn")))
+  (let [^clojure.scripting.FunctionHandle h (TRACE e getFunction "prim-l")]
+    (t/is (= 2 (.invokeLong h 1)))
+    (t/is (= 2.0 (.invokeDouble h 1.0))))
+  (let [^clojure.scripting.ClojureScriptEngine e2 (.getScriptEngine SEF0)]
+    (.put e2 "factor" 3)
+    (TRACE e2 eval "(defn score [a] (* a factor))")
+    (t/is (= 6 (TRACE e2 invokeLong "score" 2)))
+    (t/is (= 1.5 (TRACE e2 invokeDouble "score" 0.5)))))
+
 ;; TEST getInterface (Class) and invoke method, good or bad
 
 (t/is (ifn? (TRACE SE eval "(defn Callable#call [] (println :callable) :callable)")))
@@ -201,6 +748,36 @@
 (TRACE cmp equals cmp42)
 (TRACE cmp equals cmp73)
 
+;; TEST getInterface with overloaded methods (same and different arity, primitive parameters)
+
+(TRACE SE eval "(defn Appendable#append ([this x] (.append ^StringBuilder this (str x))) ([this s b e] (.append ^StringBuilder this ^CharSequence s (int b) (int e))))")
+
+(def app-sb (StringBuilder.))
+(def ^Appendable app (TRACE SEI getInterface app-sb Appendable))
+
+(TRACE app append "ab")
+(TRACE app append \c)
+(TRACE app append "xdefx" 1 4)
+(t/is (= (str app-sb) "abcdef"))
+(t/is (= (.hashCode app) (.hashCode app-sb)))
+(t/is (identical? (class app) (class (TRACE SEI getInterface (StringBuilder.) Appendable))))
+(t/is (nil? (TRACE SEI getInterface Runnable)))
+(t/is (not (java.lang.reflect.Proxy/isProxyClass (class app))))
+
+(let [^clojure.scripting.ClojureScriptEngine e (.getScriptEngine SEF)
+      baos (ByteArrayOutputStream.)]
+  (try
+    (.setWriter (.getContext e) (OutputStreamWriter. baos))
+    (.put e "greeting" "hello-out")
+    (TRACE e eval "(defn Runnable#run [] (println greeting))")
+    (let [^Runnable r (TRACE e getInterface Runnable)]
+      (t/is (not (java.lang.reflect.Proxy/isProxyClass (class r))))
+      (.run r))
+    (.flush (.getWriter (.getContext e)))
+    (t/is (= "hello-out\n" (.toString baos)))
+    (finally
+      (.close e))))
+
 (TRACE cmp equals SEI)
 (TRACE cmp hashCode)
 (TRACE cmp toString)
@@ -211,6 +788,37 @@
 
 ;; TEST namespaces
 
+;; TEST namespaces share prototype mappings copy-on-write
+(let [^ScriptEngine se1 (.getScriptEngine SEF0)
+      ^ScriptEngine se2 (.getScriptEngine SEF0)]
+  (t/is (= #'clojure.core/map (TRACE se1 eval "(resolve 'map)")))
+  (TRACE se1 eval "(def not-shared 1)")
+  (t/is (= (if NS_IS_CONSTANT 1 nil) (TRACE se2 eval "(some-> (resolve 'not-shared) deref)")))
+  (t/is (= #'clojure.core/map (TRACE se2 eval "(resolve 'map)"))))
+
+;; TEST namespace lifecycle
+(let [^clojure.scripting.ClojureEngineFactory f SEF0
+      n0 (.getNamespaceCount f)
+      ^clojure.scripting.ClojureScriptEngine se (.getScriptEngine f)
+      ns (.eval se "*ns*")]
+  (t/is (= (if NS_IS_CONSTANT n0 (inc n0)) (.getNamespaceCount f)))
+  (.eval se "(def lifecycle-x 1)")
+  (if NS_PER_CONTEXT
+    (let [ctx (SimpleScriptContext.)
+          cns (.eval se "(def lifecycle-x 1) *ns*" ctx)]
+      (t/is (= (+ n0 2) (.getNamespaceCount f)))
+      (TRACE se dispose ctx)
+      (t/is (nil? (.getAttribute ctx "javax.script.Namespace" ScriptContext/ENGINE_SCOPE)))
+      (t/is (released? cns))
+      (TRACE se dispose (.getContext se))
+      (t/is (= ns (.eval se "*ns*")))))
+  (TRACE se close)
+  (t/is (= n0 (.getNamespaceCount f)))
+  (t/is (thrown? IllegalStateException (.eval se "1")))
+  (if NS_IS_CONSTANT
+    (t/is (= ns (clojure.lang.Namespace/find (.getName ^clojure.lang.Namespace ns))))
+    (t/is (released? ns))))
+
 ;; -------------------------------------------------- Namespaces
 ;; (if NS_IS_CONSTANT
 ;;   (t/is (= DEFAULT_NS (clojure.lang.Namespace/findOrCreate (clojure.lang.Symbol/intern NS_TEMPLATE)))))
@@ -0,0 +1,101 @@
+package clojure.scripting;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  Runs tasks on an Executor, at most "concurrency" at a time, in order of submission (FIFO, fair to all submitters).
+  Waiting tasks are kept in a queue of at most "queueSize" tasks; submit is rejected when the queue is full.
+  No thread is blocked while waiting: a finished task dispatches the next one.
+*/
+
+final class BoundedExecutor {
+
+    private final Executor executor;
+    private final int concurrency;
+    private final int queueSize;
+
+    private final ConcurrentLinkedQueue<Task<?>> queue = new ConcurrentLinkedQueue<Task<?>> ();
+    private final AtomicInteger queued = new AtomicInteger ();
+    private final AtomicInteger running = new AtomicInteger ();
+
+    BoundedExecutor (final Executor executor, final int concurrency, final int queueSize) {
+        if (executor == null)
+            throw new NullPointerException ("executor is null");
+        if (concurrency <= 0 || queueSize < 0)
+            throw new IllegalArgumentException ("concurrency must be positive, queue size must not be negative: " + concurrency + ", " + queueSize);
+
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.queueSize = queueSize;
+    }
+
+    <T> Future<T> submit (final Callable<T> c) {
+        if (queued.incrementAndGet () > queueSize + Math.max (0, concurrency - running.get ())) {
+            queued.decrementAndGet ();
+            throw new RejectedExecutionException ("queue is full: " + queueSize);
+        }
+
+        Task<T> task = new Task<T> (c);
+        queue.offer (task);
+        dispatch ();
+        return task;
+    }
+
+    int getQueued () {
+        return queued.get ();
+    }
+
+    int getRunning () {
+        return running.get ();
+    }
+
+    private void dispatch () {
+        for (;;) {
+            int r = running.get ();
+            if (r >= concurrency || queue.isEmpty ())
+                return;
+            if (! running.compareAndSet (r, r + 1))
+                continue;
+
+            final Task<?> task = queue.poll ();
+            if (task == null) { // taken by another dispatch
+                running.decrementAndGet ();
+                continue;
+            }
+            queued.decrementAndGet ();
+
+            try {
+                executor.execute (new Runnable () {
+                        @Override
+                        public void run () {
+                            try {
+                                task.run ();
+                            } finally {
+                                running.decrementAndGet ();
+                                dispatch ();
+                            }
+                        }});
+            } catch (RejectedExecutionException e) { // executor is shut down
+                running.decrementAndGet ();
+                task.fail (e);
+            }
+        }
+    }
+
+    private static final class Task<T> extends FutureTask<T> {
+
+        Task (final Callable<T> c) {
+            super (c);
+        }
+
+        void fail (final Throwable t) {
+            setException (t);
+        }
+    }
+}
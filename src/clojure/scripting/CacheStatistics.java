@@ -0,0 +1,56 @@
+package clojure.scripting;
+
+/*
+  Immutable snapshot of cache counters
+*/
+
+public final class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final int capacity;
+
+    CacheStatistics (final long hits, final long misses, final long evictions, final int size, final int capacity) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    public long getHitCount () {
+        return hits;
+    }
+
+    public long getMissCount () {
+        return misses;
+    }
+
+    public long getEvictionCount () {
+        return evictions;
+    }
+
+    public int getSize () {
+        return size;
+    }
+
+    public int getCapacity () {
+        return capacity;
+    }
+
+    public double getHitRatio () {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString () {
+        return new StringBuilder ("CacheStatistics{hits=").append (hits)
+            .append (", misses=").append (misses)
+            .append (", evictions=").append (evictions)
+            .append (", size=").append (size)
+            .append (", capacity=").append (capacity).append ('}').toString ();
+    }
+}
@@ -0,0 +1,140 @@
+package clojure.scripting;
+
+import java.io.Writer;
+
+import java.util.Arrays;
+
+/*
+  Captured output (*out*, *err* of evalCaptured): a growable char buffer, not synchronized, reused via the pool of the factory.
+  A call writes to it through a Session, which is ended with the call. flush () does nothing: output is delivered,
+  when the call completes.
+*/
+
+final class CaptureBuffer extends Writer {
+
+    private char[] buf;
+    private int count;
+
+    CaptureBuffer (final int capacity) {
+        buf = new char [capacity];
+    }
+
+    @Override
+    public void write (final int c) {
+        ensure (1);
+        buf[count++] = (char) c;
+    }
+
+    @Override
+    public void write (final char[] cs, final int off, final int len) {
+        ensure (len);
+        System.arraycopy (cs, off, buf, count, len);
+        count += len;
+    }
+
+    @Override
+    public void write (final String s, final int off, final int len) {
+        ensure (len);
+        s.getChars (off, off + len, buf, count);
+        count += len;
+    }
+
+    @Override
+    public Writer append (final CharSequence cs) {
+        String s = String.valueOf (cs);
+        write (s, 0, s.length ());
+        return this;
+    }
+
+    @Override
+    public Writer append (final char c) {
+        write (c);
+        return this;
+    }
+
+    @Override
+    public void flush () {
+    }
+
+    @Override
+    public void close () {
+    }
+
+    int capacity () {
+        return buf.length;
+    }
+
+    CaptureBuffer reset () {
+        count = 0;
+        return this;
+    }
+
+    @Override
+    public String toString () {
+        return count == 0 ? "" : new String (buf, 0, count);
+    }
+
+    private void ensure (final int n) {
+        if (count + n > buf.length)
+            buf = Arrays.copyOf (buf, Math.max (buf.length * 2, count + n));
+    }
+
+    /*
+      Writer of one call: writes go to the buffer until end (). Threads started by the script (futures, agents, bound-fn)
+      may write concurrently, or after the call: such late writes are dropped, as the buffer is reused by other calls.
+    */
+    static final class Session extends Writer {
+
+        private CaptureBuffer buffer; // guarded by this, null when ended
+
+        Session (final CaptureBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public synchronized void write (final int c) {
+            if (buffer != null)
+                buffer.write (c);
+        }
+
+        @Override
+        public synchronized void write (final char[] cs, final int off, final int len) {
+            if (buffer != null)
+                buffer.write (cs, off, len);
+        }
+
+        @Override
+        public synchronized void write (final String s, final int off, final int len) {
+            if (buffer != null)
+                buffer.write (s, off, len);
+        }
+
+        @Override
+        public Writer append (final CharSequence cs) {
+            String s = String.valueOf (cs);
+            write (s, 0, s.length ());
+            return this;
+        }
+
+        @Override
+        public Writer append (final char c) {
+            write (c);
+            return this;
+        }
+
+        @Override
+        public void flush () {
+        }
+
+        @Override
+        public void close () {
+        }
+
+        // Output of the call ("" if already ended); the buffer is not written after it
+        synchronized String end () {
+            String s = buffer != null ? buffer.toString () : "";
+            buffer = null;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package clojure.scripting;
+
+/*
+  Result of evalCaptured: value of the script and its output to *out* and *err*
+*/
+
+public final class CapturedResult {
+
+    private final Object value;
+    private final String out;
+    private final String err;
+
+    CapturedResult (final Object value, final String out, final String err) {
+        this.value = value;
+        this.out = out;
+        this.err = err;
+    }
+
+    public Object getValue () {
+        return value;
+    }
+
+    public String getOut () {
+        return out;
+    }
+
+    public String getErr () {
+        return err;
+    }
+
+    @Override
+    public String toString () {
+        return new StringBuilder ("CapturedResult{value=").append (value)
+            .append (", out=").append (out.length ()).append (" chars")
+            .append (", err=").append (err.length ()).append (" chars}").toString ();
+    }
+}
@@ -0,0 +1,262 @@
+package clojure.scripting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import clojure.lang.Compiler;
+import clojure.lang.IObj;
+import clojure.lang.IPersistentMap;
+import clojure.lang.IPersistentSet;
+import clojure.lang.IPersistentVector;
+import clojure.lang.IRecord;
+import clojure.lang.ISeq;
+import clojure.lang.Keyword;
+import clojure.lang.PersistentHashMap;
+import clojure.lang.PersistentList;
+import clojure.lang.PersistentVector;
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+
+/*
+  Instrumentation of forms with Deadline.checkpoint () calls, before Compiler.eval (CHECKPOINTS).
+  Macros are expanded (as by the Compiler: a local of the enclosing fn*, let*, loop*, letfn*, catch or reify* method
+  shadows a macro of the same name, the form is a call), and a checkpoint is inserted
+  at the start of each body of loop* (every iteration, recur targets the loop) and fn* (every call, recursion included),
+  so a script, which neither blocks nor returns, still observes its deadline.
+  Macros see the tracked locals as &env, with their tags but without init expressions (LocalBinding.init is null).
+  Quoted forms and deftype* are left as is; a form, which fails to expand, is left to the Compiler to report.
+*/
+
+final class Checkpoints {
+
+    private static final Symbol QUOTE = Symbol.intern ("quote");
+    private static final Symbol VAR = Symbol.intern ("var");
+    private static final Symbol IMPORT = Symbol.intern ("clojure.core", "import*");
+    private static final Symbol DEFTYPE = Symbol.intern ("deftype*");
+    private static final Symbol FN = Symbol.intern ("fn*");
+    private static final Symbol LOOP = Symbol.intern ("loop*");
+    private static final Symbol LET = Symbol.intern ("let*");
+    private static final Symbol LETFN = Symbol.intern ("letfn*");
+    private static final Symbol CASE = Symbol.intern ("case*");
+    private static final Symbol REIFY = Symbol.intern ("reify*");
+    private static final Symbol CATCH = Symbol.intern ("catch");
+    private static final Symbol DOT = Symbol.intern (".");
+    private static final Symbol NEW = Symbol.intern ("new");
+    private static final Symbol AMP = Symbol.intern ("&");
+    private static final Keyword TAG = Keyword.intern ("tag");
+
+    private static final Object CHECKPOINT = RT.list (DOT, Deadline.class, Symbol.intern ("checkpoint"));
+
+    private Checkpoints () {}
+
+    // Must be called with thread bindings of the eval (*ns*)
+    static Object instrument (final Object form) {
+        return instrument (form, PersistentHashMap.EMPTY);
+    }
+
+    // locals: symbols of locals in scope to their bindings
+    private static Object instrument (final Object form, final IPersistentMap locals) {
+        if (form instanceof ISeq || form instanceof PersistentList)
+            return RT.seq (form) != null ? withMeta (instrumentSeq (RT.seq (form), locals), form) : form;
+        if (form instanceof IPersistentVector)
+            return withMeta (PersistentVector.create (instrumentAll (RT.seq (form), locals)), form);
+        if (form instanceof IPersistentMap && ! (form instanceof IRecord)) {
+            IPersistentMap m = (IPersistentMap) ((IPersistentMap) form).empty ();
+            for (ISeq s = RT.seq (form); s != null; s = s.next ()) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) s.first ();
+                m = m.assoc (instrument (e.getKey (), locals), instrument (e.getValue (), locals));
+            }
+            return withMeta (m, form);
+        }
+        if (form instanceof IPersistentSet) {
+            IPersistentSet set = (IPersistentSet) ((IPersistentSet) form).empty ();
+            for (ISeq s = RT.seq (form); s != null; s = s.next ())
+                set = (IPersistentSet) set.cons (instrument (s.first (), locals));
+            return withMeta (set, form);
+        }
+        return form;
+    }
+
+    private static Object instrumentSeq (final ISeq form, final IPersistentMap locals) {
+        Object op = form.first ();
+        if (! (op instanceof Symbol))
+            return PersistentList.create (instrumentAll (form, locals));
+
+        if (op.equals (QUOTE) || op.equals (VAR) || op.equals (IMPORT) || op.equals (DEFTYPE))
+            return form;
+        if (op.equals (FN))
+            return instrumentFn (form, locals);
+        if (op.equals (LOOP) || op.equals (LET) || op.equals (LETFN))
+            return instrumentLet (form, locals);
+        if (op.equals (CASE))
+            return instrumentCase (form, locals);
+        if (op.equals (REIFY))
+            return instrumentReify (form, locals);
+        if (op.equals (CATCH))
+            return instrumentFrom (form, 3, RT.count (form) > 2 ? addLocals (locals, RT.list (RT.third (form))) : locals);
+        if (op.equals (DOT))
+            return instrumentDot (form, locals);
+        if (op.equals (NEW))
+            return instrumentFrom (form, 2, locals);
+        if (Compiler.specials.containsKey (op) || locals.containsKey (op)) // specials are not shadowed by locals, macros are
+            return instrumentFrom (form, 1, locals);
+
+        Object expanded;
+        Var.pushThreadBindings (RT.mapUniqueKeys (Compiler.LOCAL_ENV, locals)); // &env of the macro
+        try {
+            expanded = Compiler.macroexpand1 (form);
+        } catch (RuntimeException e) {
+            return form;
+        } finally {
+            Var.popThreadBindings ();
+        }
+        return expanded != form ? instrument (expanded, locals) : instrumentFrom (form, 1, locals);
+    }
+
+    // (fn* name? [params] body...) or (fn* name? ([params] body...)...)
+    private static Object instrumentFn (final ISeq form, final IPersistentMap locals) {
+        List<Object> l = new ArrayList<Object> ();
+        ISeq s = form;
+        l.add (s.first ());
+        s = s.next ();
+        IPersistentMap ls = locals;
+        if (s != null && s.first () instanceof Symbol) {
+            l.add (s.first ());
+            ls = addLocals (ls, RT.list (s.first ()));
+            s = s.next ();
+        }
+        if (s != null && s.first () instanceof IPersistentVector)
+            l.addAll (instrumentBody (s, 1, addLocals (ls, s.first ())));
+        else
+            for (; s != null; s = s.next ())
+                l.add (s.first () instanceof ISeq || s.first () instanceof PersistentList
+                       ? withMeta (PersistentList.create (instrumentBody (RT.seq (s.first ()), 1, addLocals (ls, RT.first (s.first ())))), s.first ())
+                       : s.first ());
+        return PersistentList.create (l);
+    }
+
+    // (loop* [name init...] body...), let* and letfn* (without checkpoint): names are locals of the following inits and the body
+    private static Object instrumentLet (final ISeq form, final IPersistentMap locals) {
+        List<Object> l = new ArrayList<Object> ();
+        l.add (form.first ());
+        ISeq s = form.next ();
+        if (s == null || ! (s.first () instanceof IPersistentVector))
+            return form;
+
+        IPersistentMap ls = locals;
+        if (form.first ().equals (LETFN)) // functions see each other
+            for (ISeq b = RT.seq (s.first ()); b != null; b = RT.next (b.next ()))
+                ls = addLocals (ls, RT.list (b.first ()));
+        List<Object> bindings = new ArrayList<Object> ();
+        int i = 0;
+        for (ISeq b = RT.seq (s.first ()); b != null; b = b.next ())
+            if (i++ % 2 == 0)
+                bindings.add (b.first ());
+            else {
+                bindings.add (instrument (b.first (), ls));
+                ls = addLocals (ls, RT.list (bindings.get (bindings.size () - 2)));
+            }
+        l.add (withMeta (PersistentVector.create (bindings), s.first ()));
+        if (form.first ().equals (LOOP))
+            l.add (CHECKPOINT);
+        l.addAll (instrumentAll (s.next (), ls));
+        return PersistentList.create (l);
+    }
+
+    // (case* expr shift mask default {hash [test then]} switch-type test-type skip-check): tests are constants
+    private static Object instrumentCase (final ISeq form, final IPersistentMap locals) {
+        List<Object> l = new ArrayList<Object> ();
+        int i = 0;
+        for (ISeq s = form; s != null; s = s.next (), i++)
+            if (i == 1 || i == 4)
+                l.add (instrument (s.first (), locals));
+            else if (i == 5 && s.first () instanceof IPersistentMap) {
+                IPersistentMap m = (IPersistentMap) s.first ();
+                for (ISeq es = RT.seq (s.first ()); es != null; es = es.next ()) {
+                    Map.Entry<?, ?> e = (Map.Entry<?, ?>) es.first ();
+                    if (e.getValue () instanceof IPersistentVector && ((IPersistentVector) e.getValue ()).count () == 2)
+                        m = m.assoc (e.getKey (), ((IPersistentVector) e.getValue ()).assocN (1, instrument (((IPersistentVector) e.getValue ()).nth (1), locals)));
+                }
+                l.add (m);
+            } else
+                l.add (s.first ());
+        return PersistentList.create (l);
+    }
+
+    // (reify* [interfaces] (name [params] body...)...)
+    private static Object instrumentReify (final ISeq form, final IPersistentMap locals) {
+        List<Object> l = new ArrayList<Object> ();
+        int i = 0;
+        for (ISeq s = form; s != null; s = s.next (), i++)
+            l.add (i >= 2 && (s.first () instanceof ISeq || s.first () instanceof PersistentList)
+                   ? withMeta (PersistentList.create (instrumentBody (RT.seq (s.first ()), 2, addLocals (locals, RT.second (s.first ())))), s.first ())
+                   : s.first ());
+        return PersistentList.create (l);
+    }
+
+    // (. target member args...) or (. target (member args...))
+    private static Object instrumentDot (final ISeq form, final IPersistentMap locals) {
+        ISeq s = form.next () != null ? form.next ().next () : null;
+        if (s == null || ! (s.first () instanceof ISeq || s.first () instanceof PersistentList))
+            return instrumentFrom (form, 1, locals);
+
+        List<Object> l = new ArrayList<Object> ();
+        l.add (form.first ());
+        l.add (instrument (form.next ().first (), locals));
+        l.add (withMeta (instrumentFrom (RT.seq (s.first ()), 1, locals), s.first ()));
+        return PersistentList.create (l);
+    }
+
+    // Elements before n as is, then a checkpoint and the body
+    private static List<Object> instrumentBody (final ISeq form, final int n, final IPersistentMap locals) {
+        List<Object> l = new ArrayList<Object> ();
+        ISeq s = form;
+        for (int i = 0; i < n && s != null; i++, s = s.next ())
+            l.add (s.first ());
+        l.add (CHECKPOINT);
+        l.addAll (instrumentAll (s, locals));
+        return l;
+    }
+
+    private static Object instrumentFrom (final ISeq form, final int n, final IPersistentMap locals) {
+        List<Object> l = new ArrayList<Object> ();
+        ISeq s = form;
+        for (int i = 0; i < n && s != null; i++, s = s.next ())
+            l.add (s.first ());
+        l.addAll (instrumentAll (s, locals));
+        return PersistentList.create (l);
+    }
+
+    private static List<Object> instrumentAll (final ISeq form, final IPersistentMap locals) {
+        List<Object> l = new ArrayList<Object> ();
+        for (ISeq s = form; s != null; s = s.next ())
+            l.add (instrument (s.first (), locals));
+        return l;
+    }
+
+    // Adds unqualified symbols of names (params, binding names) to locals, as bindings of &env (without init)
+    private static IPersistentMap addLocals (final IPersistentMap locals, final Object names) {
+        if (! (names instanceof IPersistentVector || names instanceof ISeq)) // malformed, left to the Compiler
+            return locals;
+
+        IPersistentMap ls = locals;
+        for (ISeq s = RT.seq (names); s != null; s = s.next ())
+            if (s.first () instanceof Symbol && ((Symbol) s.first ()).getNamespace () == null && ! s.first ().equals (AMP)) {
+                Symbol sym = (Symbol) s.first ();
+                ls = ls.assoc (sym, new Compiler.LocalBinding (ls.count (), sym, tagOf (sym), null, false, null));
+            }
+        return ls;
+    }
+
+    private static Symbol tagOf (final Symbol sym) {
+        Object tag = RT.get (RT.meta (sym), TAG);
+        return tag instanceof Symbol ? (Symbol) tag : tag instanceof String ? Symbol.intern (null, (String) tag) : null;
+    }
+
+    private static Object withMeta (final Object o, final Object form) {
+        IPersistentMap meta = RT.meta (form);
+        return meta != null && o instanceof IObj ? ((IObj) o).withMeta (meta) : o;
+    }
+}
@@ -0,0 +1,378 @@
+package clojure.scripting;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.lang.reflect.Field;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Bindings;
+
+import clojure.lang.Compiler;
+import clojure.lang.DynamicClassLoader;
+import clojure.lang.IFn;
+import clojure.lang.Namespace;
+import clojure.lang.RT;
+import clojure.lang.Var;
+
+/*
+  On-disk cache of classes, generated by Compiler.eval of script functions (ClojureCompiledScript).
+  Entry is a file "<key>.class-cache" with all classes of one eval: key is SHA-256 of everything the bytecode depends on
+  (source, parameters, Clojure version, Namespace name, *unchecked-math*, *warn-on-reflection*, checkpoints, classes of binding values).
+  Payload is verified by SHA-256 digest; damaged entries are deleted. Total size of entries is bounded,
+  least recently used entries (by modification time, updated on load) are deleted first.
+  Files are written to a temporary file and renamed, so concurrent processes may share the directory.
+*/
+
+final class ClassCache {
+
+    private static final int MAGIC = 0x434C4A43; // "CLJC"
+    private static final int FORMAT = 1;
+    private static final String SUFFIX = ".class-cache";
+    private static final Field LOADED_CLASSES = getLoadedClassesField ();
+
+    private final File dir;
+    private final long maxBytes;
+
+    private final AtomicLong hits = new AtomicLong ();
+    private final AtomicLong misses = new AtomicLong ();
+    private final AtomicLong evictions = new AtomicLong ();
+
+    ClassCache (final File dir, final long maxBytes) {
+        if (! dir.isDirectory () && ! dir.mkdirs ())
+            throw new IllegalArgumentException ("Can not create directory: " + dir);
+
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        trim ();
+    }
+
+    static String key (final String source, final String[] params, final Namespace ns, final boolean checkpoints, final Bindings... bs) {
+        Map<String, String> tags = new TreeMap<String, String> (); // the first Bindings wins, as in BindingPlan
+        for (Bindings b : bs)
+            if (b != null)
+                for (Map.Entry<String, Object> e : b.entrySet ())
+                    if (! tags.containsKey (e.getKey ()) && ! e.getKey ().startsWith ("javax.script."))
+                        tags.put (e.getKey (), e.getValue () == null ? "nil" : e.getValue ().getClass ().getName ());
+
+        StringBuilder sb = new StringBuilder ()
+            .append (FORMAT).append ('\n')
+            .append (RT.var ("clojure.core", "*clojure-version*").deref ()).append ('\n')
+            .append (ns.getName ()).append ('\n')
+            .append (RT.UNCHECKED_MATH.deref ()).append ('\n')
+            .append (RT.var ("clojure.core", "*warn-on-reflection*").deref ()).append ('\n')
+            .append (checkpoints).append ('\n')
+            .append (Arrays.toString (params)).append ('\n')
+            .append (tags).append ('\n')
+            .append (source);
+        return hex (sha256 (utf8 (sb.toString ())));
+    }
+
+    /*
+      Function of the cached script (as returned by Compiler.eval), or null
+    */
+    IFn load (final String key) {
+        File f = new File (dir, key + SUFFIX);
+        if (! f.isFile ()) {
+            misses.incrementAndGet ();
+            return null;
+        }
+
+        try {
+            byte[] payload;
+            InputStream in = new FileInputStream (f);
+            try {
+                DataInputStream din = new DataInputStream (in);
+                if (din.readInt () != MAGIC || din.readInt () != FORMAT)
+                    throw new IOException ("Unknown format");
+                byte[] digest = new byte [din.readInt ()];
+                din.readFully (digest);
+                payload = new byte [din.readInt ()];
+                din.readFully (payload);
+                if (! MessageDigest.isEqual (digest, sha256 (payload)))
+                    throw new IOException ("Digest mismatch");
+            } finally {
+                in.close ();
+            }
+
+            DataInputStream din = new DataInputStream (new ByteArrayInputStream (payload));
+            if (! key.equals (din.readUTF ()))
+                throw new IOException ("Key mismatch");
+            String evalClass = din.readUTF ();
+            Loader loader = new Loader ();
+            Class<?> c = null;
+            for (int i = din.readInt (); i > 0; i--) {
+                String name = din.readUTF ();
+                byte[] bytes = new byte [din.readInt ()];
+                din.readFully (bytes);
+                Class<?> c0 = loader.define (name, bytes);
+                if (name.equals (evalClass))
+                    c = c0;
+            }
+            if (c == null)
+                throw new IOException ("No eval class: " + evalClass);
+
+            IFn fn = (IFn) ((IFn) c.getDeclaredConstructor ().newInstance ()).invoke ();
+            f.setLastModified (System.currentTimeMillis ());
+            hits.incrementAndGet ();
+            return fn;
+        } catch (Exception e) { // damaged or incompatible entry
+            f.delete ();
+            misses.incrementAndGet ();
+            return null;
+        } catch (LinkageError e) {
+            f.delete ();
+            misses.incrementAndGet ();
+            return null;
+        }
+    }
+
+    /*
+      Compiler.eval of the form (script function), its classes are stored with the key.
+      Compiler.eval always defines classes by a new DynamicClassLoader, so bytecode is taken from class files,
+      written by the Compiler with *compile-files* to a temporary *compile-path*.
+    */
+    Object eval (final String key, final Object form) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile ("compile", "", dir);
+            if (! tmp.delete () || ! tmp.mkdir ())
+                tmp = null;
+        } catch (IOException e) {}
+        if (tmp == null) // cache is optional
+            return Compiler.eval (form, false);
+
+        try {
+            Object result;
+            Var.pushThreadBindings (RT.map (Compiler.COMPILE_FILES, RT.T, Compiler.COMPILE_PATH, tmp.getPath ()));
+            try {
+                result = Compiler.eval (form, false);
+            } finally {
+                Var.popThreadBindings ();
+            }
+
+            try {
+                store (key, result.getClass (), tmp);
+            } catch (IOException e) {}
+            return result;
+        } finally {
+            delete (tmp);
+        }
+    }
+
+    // Classes, defined by DynamicClassLoaders (Compiler), -1 if not known
+    static int loadedClassCount () {
+        try {
+            return ((Map) LOADED_CLASSES.get (null)).size ();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    // Classes of the eval, which returned the script function (fn), -1 if not known
+    static int classCount (final Class<?> fn) {
+        if (fn.getClassLoader () instanceof Loader)
+            return ((Loader) fn.getClassLoader ()).defined;
+
+        String evalClass = evalClass (fn);
+        try {
+            int n = 0;
+            for (Object name : ((Map) LOADED_CLASSES.get (null)).keySet ())
+                if (name.equals (evalClass) || ((String) name).startsWith (evalClass + "$"))
+                    n++;
+            return n;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    CacheStatistics getStatistics () {
+        File[] fs = entries ();
+        return new CacheStatistics (hits.get (), misses.get (), evictions.get (), fs.length, -1);
+    }
+
+    // Classes of the script function (fn) are the eval class, which returns fn, and classes nested in it
+    private void store (final String key, final Class<?> fn, final File classes) throws IOException {
+        String evalClass = evalClass (fn);
+        if (! evalClass.matches (".*\\$eval\\d+"))
+            return;
+
+        Map<String, byte[]> bytes = new TreeMap<String, byte[]> ();
+        collect (classes, "", evalClass, bytes);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream ();
+        DataOutputStream dos = new DataOutputStream (bos);
+        dos.writeUTF (key);
+        dos.writeUTF (evalClass);
+        dos.writeInt (bytes.size ());
+        for (Map.Entry<String, byte[]> e : bytes.entrySet ()) {
+            dos.writeUTF (e.getKey ());
+            dos.writeInt (e.getValue ().length);
+            dos.write (e.getValue ());
+        }
+        dos.flush ();
+        byte[] payload = bos.toByteArray ();
+        byte[] digest = sha256 (payload);
+
+        File tmp = File.createTempFile (key, ".tmp", dir);
+        try {
+            OutputStream out = new FileOutputStream (tmp);
+            try {
+                DataOutputStream fout = new DataOutputStream (out);
+                fout.writeInt (MAGIC);
+                fout.writeInt (FORMAT);
+                fout.writeInt (digest.length);
+                fout.write (digest);
+                fout.writeInt (payload.length);
+                fout.write (payload);
+                fout.flush ();
+            } finally {
+                out.close ();
+            }
+            File f = new File (dir, key + SUFFIX);
+            if (! tmp.renameTo (f) && ! (f.delete () && tmp.renameTo (f)))
+                throw new IOException ("Can not rename " + tmp + " to " + f);
+        } finally {
+            tmp.delete ();
+        }
+        trim ();
+    }
+
+    // Deletes least recently used entries, while total size exceeds maxBytes
+    private void trim () {
+        File[] fs = entries ();
+        long total = 0;
+        for (File f : fs)
+            total += f.length ();
+        if (total <= maxBytes)
+            return;
+
+        Arrays.sort (fs, new Comparator<File> () {
+                @Override
+                public int compare (final File f1, final File f2) {
+                    long m1 = f1.lastModified (), m2 = f2.lastModified ();
+                    return m1 < m2 ? -1 : m1 > m2 ? 1 : 0;
+                }});
+        for (int i = 0; i < fs.length && total > maxBytes; i++) {
+            long length = fs[i].length ();
+            if (fs[i].delete ()) {
+                total -= length;
+                evictions.incrementAndGet ();
+            }
+        }
+    }
+
+    private static String evalClass (final Class<?> fn) {
+        return fn.getName ().substring (0, Math.max (0, fn.getName ().lastIndexOf ('$')));
+    }
+
+    private static void collect (final File dir, final String pkg, final String evalClass, final Map<String, byte[]> bytes) throws IOException {
+        File[] fs = dir.listFiles ();
+        if (fs == null)
+            return;
+
+        for (File f : fs)
+            if (f.isDirectory ())
+                collect (f, pkg + f.getName () + ".", evalClass, bytes);
+            else if (f.getName ().endsWith (".class")) {
+                String name = pkg + f.getName ().substring (0, f.getName ().length () - ".class".length ());
+                if (name.equals (evalClass) || name.startsWith (evalClass + "$"))
+                    bytes.put (name, readFully (f));
+            }
+    }
+
+    private static byte[] readFully (final File f) throws IOException {
+        byte[] bytes = new byte [(int) f.length ()];
+        InputStream in = new FileInputStream (f);
+        try {
+            new DataInputStream (in).readFully (bytes);
+        } finally {
+            in.close ();
+        }
+        return bytes;
+    }
+
+    private static void delete (final File f) {
+        File[] fs = f.listFiles ();
+        if (fs != null)
+            for (File f0 : fs)
+                delete (f0);
+        f.delete ();
+    }
+
+    private File[] entries () {
+        File[] fs = dir.listFiles (new FileFilter () {
+                @Override
+                public boolean accept (final File f) {
+                    return f.getName ().endsWith (SUFFIX);
+                }});
+        return fs != null ? fs : new File [0];
+    }
+
+    private static Field getLoadedClassesField () {
+        try {
+            Field f = DynamicClassLoader.class.getDeclaredField ("classCache");
+            f.setAccessible (true);
+            return f;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static byte[] utf8 (final String s) {
+        try {
+            return s.getBytes ("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException (e);
+        }
+    }
+
+    private static byte[] sha256 (final byte[] bytes) {
+        try {
+            return MessageDigest.getInstance ("SHA-256").digest (bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException (e);
+        }
+    }
+
+    private static String hex (final byte[] bytes) {
+        StringBuilder sb = new StringBuilder ();
+        for (byte b : bytes)
+            sb.append (Character.forDigit ((b >> 4) & 0xF, 16)).append (Character.forDigit (b & 0xF, 16));
+        return sb.toString ();
+    }
+
+    // Dedicated loader of cached classes: they are not put into (global) DynamicClassLoader cache by name
+    private static final class Loader extends DynamicClassLoader {
+
+        private volatile int defined;
+
+        Loader () {
+            super (RT.baseLoader ());
+        }
+
+        Class<?> define (final String name, final byte[] bytes) {
+            Class<?> c = defineClass (name, bytes, 0, bytes.length);
+            defined++;
+            return c;
+        }
+    }
+}
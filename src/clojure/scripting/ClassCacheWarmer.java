@@ -0,0 +1,66 @@
+package clojure.scripting;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.script.ScriptException;
+
+/*
+  Offline warm up of the on-disk class cache: compiles scripts (files, *.clj files of directories), so their classes
+  are stored into CLASS_CACHE_DIR. Keys include Namespace name, so Namespace must be the same as in the application
+  (constant NS_TEMPLATE), as well as Clojure version and flags:
+
+  java -Dclojure.scripting.CLASS_CACHE_DIR=cache -Dclojure.scripting.NS_TEMPLATE=user clojure.scripting.ClassCacheWarmer scripts/ ...
+*/
+
+public final class ClassCacheWarmer {
+
+    private ClassCacheWarmer () {
+    }
+
+    public static void main (final String[] args) throws IOException {
+        ClojureEngineFactory factory = new ClojureEngineFactory ();
+        if (factory.getClassCacheStatistics () == null) {
+            System.err.println ("CLASS_CACHE_DIR is not set");
+            System.exit (1);
+        }
+
+        ClojureScriptEngine engine = factory.getScriptEngine ();
+        int failed = 0;
+        List<File> scripts = new ArrayList<File> ();
+        for (String arg : args)
+            collect (new File (arg), scripts);
+        for (File f : scripts) {
+            Reader r = new InputStreamReader (new FileInputStream (f), "UTF-8");
+            try {
+                engine.compile (r);
+            } catch (ScriptException e) {
+                failed++;
+                System.err.println (f + ": " + e.getMessage ());
+            } finally {
+                r.close ();
+            }
+        }
+        engine.close ();
+
+        System.out.println (scripts.size () + " scripts, " + failed + " failed, " + factory.getClassCacheStatistics ());
+    }
+
+    private static void collect (final File f, final List<File> scripts) {
+        if (f.isDirectory ()) {
+            File[] fs = f.listFiles ();
+            Arrays.sort (fs);
+            for (File f0 : fs)
+                if (f0.isDirectory () || f0.getName ().endsWith (".clj"))
+                    collect (f0, scripts);
+        } else
+            scripts.add (f);
+    }
+}
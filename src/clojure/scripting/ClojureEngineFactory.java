@@ -1,26 +1,57 @@
 package clojure.scripting;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.ObjectName;
 
 import javax.script.Bindings;
-import javax.script.Compilable;
-import javax.script.CompiledScript;
-import javax.script.Invocable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
@@ -31,15 +62,22 @@ import javax.script.SimpleScriptContext;
 import static javax.script.ScriptContext.ENGINE_SCOPE;
 import static javax.script.ScriptContext.GLOBAL_SCOPE;
 
+import clojure.scripting.ScriptListener.Operation;
+
 import clojure.lang.Compiler;
 import clojure.lang.IFn;
 import clojure.lang.IPersistentMap;
+import clojure.lang.ISeq;
+import clojure.lang.Keyword;
 import clojure.lang.LineNumberingPushbackReader;
 import clojure.lang.LispReader;
 import clojure.lang.Namespace;
 import clojure.lang.PersistentArrayMap;
+import clojure.lang.PersistentVector;
 import clojure.lang.RT;
+import clojure.lang.RestFn;
 import clojure.lang.Symbol;
+import clojure.lang.Util;
 import clojure.lang.Var;
 
 /*
@@ -56,14 +94,31 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
 
     static {
         String clojureName = "Clojure";
-        String clojureVersion = RT.CLOJURE_NS.intern (Symbol.intern (null, "clojure-version")).invoke ().toString ();
+        String clojureVersion = getClojureVersion ();
 
         ENGINE_PARAMS.put (ScriptEngine.ENGINE, clojureName);
         ENGINE_PARAMS.put (ScriptEngine.ENGINE_VERSION, clojureVersion);
         ENGINE_PARAMS.put (ScriptEngine.NAME, clojureName);
         ENGINE_PARAMS.put (ScriptEngine.LANGUAGE, clojureName);
         ENGINE_PARAMS.put (ScriptEngine.LANGUAGE_VERSION, clojureVersion);
-        ENGINE_PARAMS.put ("THREADING", "MULTITHREADED"); // ?? "THREAD-ISOLATED"
+    }
+
+    // Version of Clojure, as read by clojure.core (clojure/version.properties), without initialization of the runtime
+    private static String getClojureVersion () {
+        try {
+            InputStream in = ClojureEngineFactory.class.getResourceAsStream ("/clojure/version.properties");
+            if (in != null)
+                try {
+                    Properties ps = new Properties ();
+                    ps.load (in);
+                    String v = ps.getProperty ("version");
+                    if (v != null)
+                        return v.trim ();
+                } finally {
+                    in.close ();
+                }
+        } catch (IOException e) {}
+        return RT.CLOJURE_NS.intern (Symbol.intern (null, "clojure-version")).invoke ().toString ();
     }
 
     @Override
@@ -130,7 +185,7 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
     }
 
     @Override
-    public ScriptEngine getScriptEngine () {
+    public ClojureScriptEngine getScriptEngine () {
         return new ClojureEngine ();
     }
 
@@ -149,17 +204,280 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
       TODO: Namespace can be created per Bindings (NS_PER_BINDINGS)?
     */
     private static final String PACKAGE_NAME = ClojureEngineFactory.class.getPackage ().getName ();
+
     private static final String NS_TEMPLATE = System.getProperty (PACKAGE_NAME + ".NS_TEMPLATE", PACKAGE_NAME + ".ns-%d");
-    private static final Namespace NS_FORCED = NS_TEMPLATE.equals (String.format (NS_TEMPLATE, 1)) ? createNamespace (NS_TEMPLATE) : null;
-    private static final boolean NS_PER_CONTEXT = NS_FORCED == null && Boolean.getBoolean (PACKAGE_NAME + ".NS_PER_CONTEXT");
+    private static final boolean NS_SHARED = NS_TEMPLATE.equals (String.format (NS_TEMPLATE, 1));
+    private static final boolean NS_PER_CONTEXT = ! NS_SHARED && Boolean.getBoolean (PACKAGE_NAME + ".NS_PER_CONTEXT");
     private static final String NS_KEY = "javax.script.Namespace";
 
-    // private static final Var REFER = RT.var ("clojure.core", "refer");
-    // private static final Var WARN_ON_REFLECTION = RT.var ("clojure.core", "*warn-on-reflection*");
+    /*
+      THREAD_ISOLATED: the default ScriptContext of an engine (used by methods, which do not accept one) is per thread,
+      so setContext, setBindings (ENGINE_SCOPE), put and the Reader/Writers of the context are independent in each thread,
+      while GLOBAL_SCOPE Bindings are shared by the threads (use ConcurrentBindings, if they are updated concurrently).
+      With NS_PER_CONTEXT, each thread gets a Namespace of its own, released by close (). Otherwise (MULTITHREADED),
+      the default ScriptContext is shared by the threads, and safely published by setContext.
+    */
+    private static final boolean THREAD_ISOLATED = Boolean.getBoolean (PACKAGE_NAME + ".THREAD_ISOLATED");
+
+    static {
+        ENGINE_PARAMS.put ("THREADING", THREAD_ISOLATED ? "THREAD-ISOLATED" : "MULTITHREADED");
+    }
+
+    /*
+      New Namespaces are created from the prototype Namespace (clojure.core referred, plus NS_PROTOTYPE_REQUIRES libs loaded
+      and NS_PROTOTYPE_INIT script evaluated in it): its mappings and aliases (immutable maps) are shared by the new Namespace,
+      instead of referring clojure.core one Var at a time. Vars, defined by NS_PROTOTYPE_INIT, are referred, not copied.
+      Mappings are set via reflection; if it is not permitted, or -Dclojure.scripting.NS_PROTOTYPE=false, clojure.core is referred.
+    */
+    private static final Field NS_MAPPINGS = getNamespaceField ("mappings");
+    private static final Field NS_ALIASES = getNamespaceField ("aliases");
+
+    /*
+      The Clojure runtime (clojure.lang.RT) is initialized with the Bootstrap class: by the first engine (getScriptEngine),
+      or by warmUp, not when ScriptEngineManager instantiates the factory. Factory metadata does not need the runtime.
+    */
+    private static final class Bootstrap {
+
+        private static final long T0 = System.nanoTime ();
+
+        // private static final Var REFER = RT.var ("clojure.core", "refer");
+        // private static final Var WARN_ON_REFLECTION = RT.var ("clojure.core", "*warn-on-reflection*");
+
+        static final Var REFER = RT.CLOJURE_NS.intern (Symbol.intern (null, "refer"));
+        static final Var REQUIRE = RT.CLOJURE_NS.intern (Symbol.intern (null, "require"));
+        static final Var WARN_ON_REFLECTION = RT.CLOJURE_NS.intern (Symbol.intern (null, "*warn-on-reflection*"));
+        // static final Var ALLOW_UNRESOLVED_VARS = RT.CLOJURE_NS.intern (Symbol.intern (null, "*allow-unresolved-vars*"));
+
+        static final Namespace NS_PROTOTYPE = createPrototype ();
+        static final Namespace NS_FORCED = NS_SHARED ? createNamespace (NS_TEMPLATE) : null;
+
+        static final long NANOS = System.nanoTime () - T0; // time of the initialization
+    }
+
+    /*
+      Optional cache of compiled scripts for ScriptEngine.eval (String/Reader), enabled by EVAL_CACHE_SIZE > 0.
+      Key is the script source, current Namespace (its token, so a released Namespace never matches) and the set
+      of binding names; value is the script compiled the same way as by Compilable.compile, so cached scripts
+      are evaluated as a body of a function (forms which must be evaluated one by one, like ns or macro definitions
+      used by the same script, do not fit). The cache is per engine (scripts belong to it), counted in EVAL_CACHE totals.
+    */
+    private static final int EVAL_CACHE_SIZE = Integer.getInteger (PACKAGE_NAME + ".EVAL_CACHE_SIZE", 0);
+    private static final LRUCache.Totals EVAL_CACHE = EVAL_CACHE_SIZE > 0 ? new LRUCache.Totals (EVAL_CACHE_SIZE) : null;
+
+    /*
+      Data mode (see DataReader): readData reads EDN without the compiler; with DATA_MODE=auto, eval (String/Reader)
+      of a literal-only source (config maps, vectors of rules, literals) returns the value read, without Compiler.load.
+      DATA_CACHE_SIZE > 0 caches values read by source and reader configuration (*data-readers*, *default-data-reader-fn*),
+      so identical sources share the value, which must not be mutated.
+    */
+    private static final String DATA_MODE = System.getProperty (PACKAGE_NAME + ".DATA_MODE", "off");
+    private static final boolean DATA_AUTO = DATA_MODE.equals ("auto");
+    private static final int DATA_CACHE_SIZE = Integer.getInteger (PACKAGE_NAME + ".DATA_CACHE_SIZE", 0);
+    private static final LRUCache<DataKey, DataReader.Data> DATA_CACHE =
+        DATA_CACHE_SIZE > 0 ? new LRUCache<DataKey, DataReader.Data> (DATA_CACHE_SIZE) : null;
+
+    private static final class DataKey {
+
+        private final String source;
+        private final Object readers;
+        private final Object defaultFn;
+
+        DataKey (final String source, final Object readers, final Object defaultFn) {
+            this.source = source;
+            this.readers = readers;
+            this.defaultFn = defaultFn;
+        }
+
+        @Override
+        public int hashCode () {
+            return source.hashCode () * 31 + Util.hash (readers);
+        }
+
+        @Override
+        public boolean equals (final Object o) {
+            if (! (o instanceof DataKey))
+                return false;
+            DataKey k = (DataKey) o;
+            return source.equals (k.source) && Util.equals (readers, k.readers) && Util.equals (defaultFn, k.defaultFn);
+        }
+    }
+
+    static {
+        if (! Arrays.asList ("off", "auto").contains (DATA_MODE))
+            throw new IllegalArgumentException ("Unknown " + PACKAGE_NAME + ".DATA_MODE: " + DATA_MODE);
+    }
+
+    private static DataReader.Data readData (final String s) throws ScriptException {
+        if (s == null)
+            throw new NullPointerException ("script is null");
+
+        Object readers = RT.DATA_READERS.deref ();
+        Object defaultFn = RT.DEFAULT_DATA_READER_FN.deref ();
+        DataKey key = DATA_CACHE != null ? new DataKey (s, readers, defaultFn) : null;
+        DataReader.Data d = key != null ? DATA_CACHE.get (key) : null;
+        if (d == null) {
+            d = DataReader.read (s, readers, defaultFn);
+            if (key != null)
+                DATA_CACHE.put (key, d);
+        }
+        return d;
+    }
+
+    // Data of a literal-only source (DATA_MODE=auto), or null for code
+    private static DataReader.Data readLiteral (final String s) {
+        if (! DATA_AUTO || ! DataReader.maybeLiteral (s))
+            return null;
+        try {
+            DataReader.Data d = readData (s);
+            return d.literal ? d : null;
+        } catch (ScriptException e) { // not EDN, the compiler reports errors
+            return null;
+        }
+    }
+
+    /*
+      Optional on-disk cache of classes of compiled scripts (see ClassCache), enabled by CLASS_CACHE_DIR;
+      total size of entries is bounded by CLASS_CACHE_MAX_BYTES (64 MB by default).
+      Used for the compilation of ClojureCompiledScript (Compilable.compile and the eval cache).
+    */
+    private static final String CLASS_CACHE_DIR = System.getProperty (PACKAGE_NAME + ".CLASS_CACHE_DIR");
+    private static final ClassCache CLASS_CACHE = CLASS_CACHE_DIR != null
+        ? new ClassCache (new File (CLASS_CACHE_DIR), Long.getLong (PACKAGE_NAME + ".CLASS_CACHE_MAX_BYTES", 64L << 20)) : null;
+
+    /*
+      Class loaders of compiled scripts (ScriptClassLoader), by LOADER_POLICY: "script" - a loader per compilation (as by Compiler.eval),
+      "namespace" - a loader per Namespace (released with it), "generation" - a loader shared by all scripts.
+      A shared loader is retired after LOADER_GENERATION_SIZE classes and replaced by a new one, so fewer loaders are created,
+      and classes of a retired generation unload together, when its scripts are unreachable.
+      Eval of Readers (Compiler.load) and the class cache use loaders of their own.
+    */
+    private static final String LOADER_POLICY = System.getProperty (PACKAGE_NAME + ".LOADER_POLICY", "script");
+    private static final int LOADER_GENERATION_SIZE = Math.max (1, Integer.getInteger (PACKAGE_NAME + ".LOADER_GENERATION_SIZE", 1024));
+    private static final Object LOADER_GENERATION = new Object ();
+    private static final WeakKeyMap<Object, ScriptClassLoader> LOADERS = new WeakKeyMap<Object, ScriptClassLoader> (); // nsToken or LOADER_GENERATION
+
+    static {
+        if (! Arrays.asList ("script", "namespace", "generation").contains (LOADER_POLICY))
+            throw new IllegalArgumentException ("Unknown " + PACKAGE_NAME + ".LOADER_POLICY: " + LOADER_POLICY);
+    }
+
+    private static ScriptClassLoader getScriptLoader (final Namespace ns) {
+        if (LOADER_POLICY.equals ("script"))
+            return new ScriptClassLoader (RT.baseLoader ());
+
+        Object key = LOADER_POLICY.equals ("namespace") ? nsToken (ns) : LOADER_GENERATION;
+        synchronized (LOADERS) {
+            ScriptClassLoader loader = LOADERS.get (key);
+            if (loader == null || loader.size () >= LOADER_GENERATION_SIZE) {
+                Thread t = Thread.currentThread (); // parent is not a loader of the current compilation (LOADER)
+                loader = new ScriptClassLoader (RT.booleanCast (RT.USE_CONTEXT_CLASSLOADER.deref ()) && t.getContextClassLoader () != null
+                                                ? t.getContextClassLoader () : Compiler.class.getClassLoader ());
+                LOADERS.put (key, loader);
+            }
+            return loader;
+        }
+    }
+
+    // Compiler.eval of the script function form ((fn [params] body)), with classes defined by the loader of LOADER_POLICY
+    private static Object evalScriptFn (final Object form) {
+        Var.pushThreadBindings (mapUniqueKeys (Compiler.LOADER, getScriptLoader ((Namespace) RT.CURRENT_NS.deref ())));
+        try {
+            Compiler.FnExpr fexpr = (Compiler.FnExpr) Compiler.analyze (Compiler.C.EXPRESSION,
+                                                                        RT.list (Symbol.intern ("fn*"), PersistentVector.EMPTY, form));
+            return ((IFn) fexpr.eval ()).invoke ();
+        } finally {
+            Var.popThreadBindings ();
+        }
+    }
+
+    /*
+      Optional per engine cache of Vars, resolved by function name (Invocable.invokeFunction/invokeMethod/getInterface),
+      enabled by FN_CACHE_SIZE > 0. Cached Var is used only while it is still mapped by the same symbol
+      in the Namespace of the call, so ns-unmap and Namespaces per ScriptContext are taken into account.
+    */
+    private static final int FN_CACHE_SIZE = Integer.getInteger (PACKAGE_NAME + ".FN_CACHE_SIZE", 0);
+
+    private static final class ResolvedFn {
+
+        private final Symbol sym;
+        private final Var var;
+
+        ResolvedFn (final Symbol sym, final Var var) {
+            this.sym = sym;
+            this.var = var;
+        }
+
+        boolean isMapped (final Namespace ns) {
+            return sym.getNamespace () == null ? ns.getMapping (sym) == var : var.ns.findInternedVar (var.sym) == var;
+        }
+    }
+
+    /*
+      Deadlines: a call with thread bindings of the engine (eval, CompiledScript.eval, invokeFunction, ...) runs at most
+      the timeout in milliseconds, from the ClojureScriptEngine.TIMEOUT attribute of the Bindings or ScriptContext of the call,
+      or of the engine (setTimeout, TIMEOUT_MILLIS by default, 0: none). When it expires, the thread is interrupted, and the call
+      fails with ScriptTimeoutException. CHECKPOINTS=true compiles checkpoints into loops and functions (see Checkpoints),
+      so scripts, which ignore interrupts, are stopped too; CHECKPOINT_BUDGET > 0 limits number of checkpoints per call.
+    */
+    private static final long TIMEOUT_MILLIS = Math.max (0, Long.getLong (PACKAGE_NAME + ".TIMEOUT_MILLIS", 0));
+    private static final boolean CHECKPOINTS = Boolean.getBoolean (PACKAGE_NAME + ".CHECKPOINTS");
+    private static final long CHECKPOINT_BUDGET = CHECKPOINTS ? Math.max (0, Long.getLong (PACKAGE_NAME + ".CHECKPOINT_BUDGET", 0)) : 0;
+
+    private static Object callClojure (final Callable<?> cc, final IPersistentMap tb, final long timeout) throws ScriptException {
+        if (timeout <= 0 && CHECKPOINT_BUDGET == 0)
+            return callClojure (cc, tb);
+
+        Deadline d = Deadline.start (timeout, CHECKPOINT_BUDGET);
+        try {
+            return callClojure (cc, tb);
+        } catch (ScriptException e) {
+            throw d.isExpired () && ! (e instanceof ScriptTimeoutException) ? d.timeout (e) : e;
+        } finally {
+            d.finish ();
+        }
+    }
+
+    private static Object checkpointed (final Object form) {
+        return CHECKPOINTS ? Checkpoints.instrument (form) : form;
+    }
+
+    /*
+      Instrumentation: listeners (ScriptListener) are notified by calls with thread bindings of the engine
+      and by compilation of scripts. METRICS=true registers built-in listener as MXBean (EngineMetricsMXBean).
+      Without listeners the only cost is a read of LISTENERS.
+    */
+    private static volatile ScriptListener[] LISTENERS = new ScriptListener [0];
+    private static final EngineMetrics METRICS = Boolean.getBoolean (PACKAGE_NAME + ".METRICS") ? createMetrics () : null;
+
+    private static EngineMetrics createMetrics () {
+        EngineMetrics metrics = new EngineMetrics (new ClojureEngineFactory ());
+        try {
+            ManagementFactory.getPlatformMBeanServer ().registerMBean (metrics, new ObjectName (PACKAGE_NAME + ":type=EngineMetrics"));
+        } catch (Exception e) {} // still available via getMetrics
+        LISTENERS = new ScriptListener[] {metrics};
+        return metrics;
+    }
+
+    private static void fireCompiled (final ScriptListener[] ls, final long nanos, final boolean failed) {
+        for (ScriptListener l : ls)
+            try {
+                l.compiled (nanos, failed);
+            } catch (RuntimeException e) {}
+    }
+
+    private static void fireCalled (final ScriptListener[] ls, final Operation op, final long nanos, final boolean failed) {
+        for (ScriptListener l : ls)
+            try {
+                l.called (op, nanos, failed);
+            } catch (RuntimeException e) {}
+    }
 
-    private static final Var REFER = RT.CLOJURE_NS.intern (Symbol.intern (null, "refer"));
-    private static final Var WARN_ON_REFLECTION = RT.CLOJURE_NS.intern (Symbol.intern (null, "*warn-on-reflection*"));
-    // private static final Var ALLOW_UNRESOLVED_VARS = RT.CLOJURE_NS.intern (Symbol.intern (null, "*allow-unresolved-vars*"));
+    private static void fireBound (final ScriptListener[] ls, final int size) {
+        for (ScriptListener l : ls)
+            try {
+                l.bound (size);
+            } catch (RuntimeException e) {}
+    }
 
     private static Object callClojure (final Callable cc, final IPersistentMap tb) throws ScriptException {
         Var.pushThreadBindings (tb); // tb: ThreadBindings
@@ -168,6 +486,8 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
             // TODO: Handle ScriptException: LineNumber, ColumnNumber
             // } catch (Compiler.CompilerException e) { // CompilerException extends RuntimeException
             //     throw (ScriptException) new ScriptException ("Unable to compile", e.source == null ? "<source>" : e.source, e.line).initCause (e);
+        } catch (ScriptException e) { // from nested callClojure
+            throw e;
         } catch (Exception e) {
             throw new ScriptException (e);
         } finally {
@@ -175,48 +495,424 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
         }
     }
 
+    /*
+      Bindings are passed to scripts as dynamic Vars, interned in the current Namespace, and pushed as thread bindings.
+      Vars for a set of binding names are resolved once and kept in a BindingPlan (per Namespace, most recent first),
+      so a call just fills the thread bindings frame with values. Plan is replaced, when binding names change.
+      Duplicate names are resolved in favour of the first Bindings (ENGINE_SCOPE over GLOBAL_SCOPE).
+      Values are bound as is: a caller, which wants a Java List, Map or array seen as a Clojure collection, binds its view
+      (CollectionViews.of), value by value.
+    */
+    private static final int BINDING_PLANS_PER_NS = Math.max (1, Integer.getInteger (PACKAGE_NAME + ".BINDING_PLANS", 16));
+    private static final ConcurrentHashMap<Namespace, BindingPlan[]> BINDING_PLANS = new ConcurrentHashMap<Namespace, BindingPlan[]> ();
+
+    private static final class BindingPlan {
+
+        private final int[] sizes; // size of each Bindings, -1 for null
+        private final Map<String, Integer>[] slots; // for each Bindings: name -> index of var, -1 if skipped
+        private final Var[] vars;
+        private final Class<?>[] tags; // classes of values, last set as Var tags (races are benign: tag is set again)
+
+        @SuppressWarnings ("unchecked")
+        BindingPlan (final Namespace ns, final Bindings[] bs) {
+            sizes = new int [bs.length];
+            slots = (Map<String, Integer>[]) new Map<?, ?> [bs.length];
+            Map<String, Integer> seen = new HashMap<String, Integer> ();
+            for (int j = 0; j < bs.length; j++) {
+                Bindings b = bs[j];
+                if (b == null) {
+                    sizes[j] = -1;
+                    continue;
+                }
+                sizes[j] = b.size ();
+                slots[j] = new HashMap<String, Integer> ();
+                for (String k : b.keySet ()) {
+                    Integer x = seen.get (k);
+                    if (x == null && ! k.startsWith ("javax.script.")) {
+                        x = seen.size ();
+                        seen.put (k, x);
+                        slots[j].put (k, x);
+                    } else
+                        slots[j].put (k, -1);
+                }
+            }
+            vars = new Var [seen.size ()];
+            for (Map.Entry<String, Integer> e : seen.entrySet ()) // Create dynamic VARs from scripting bindings
+                vars[e.getValue ()] = ns.intern (Symbol.intern (null, e.getKey ())).setDynamic ();
+            tags = new Class<?> [vars.length];
+        }
+
+        boolean names (final Bindings[] bs) {
+            for (int j = 0; j < bs.length; j++)
+                if (bs[j] != null && ! slots[j].keySet ().equals (bs[j].keySet ()))
+                    return false;
+            return true;
+        }
+
+        boolean matches (final Bindings[] bs) {
+            if (bs.length != sizes.length)
+                return false;
+            for (int j = 0; j < bs.length; j++)
+                if (sizes[j] != (bs[j] == null ? -1 : bs[j].size ()))
+                    return false;
+            return true;
+        }
+
+        // Puts var/value pairs into os (from offset i); false if names of bindings do not match the plan
+        // (or a name was removed concurrently, ConcurrentBindings)
+        boolean fill (final Object[] os, final int i, final Bindings[] bs) {
+            int n = 0;
+            for (int j = 0; j < bs.length; j++)
+                if (bs[j] != null)
+                    for (Map.Entry<String, Object> entry : bs[j].entrySet ()) {
+                        Integer x = slots[j].get (entry.getKey ());
+                        if (x == null)
+                            return false;
+                        int k = x;
+                        if (k < 0)
+                            continue;
+                        Object v = entry.getValue ();
+                        if (v != null && v.getClass () != tags[k]) // typed VARs
+                            retag (k, v.getClass ());
+                        if (! vars[k].isDynamic ()) // def of the name by a script resets it
+                            vars[k].setDynamic ();
+                        os [i + k * 2] = vars[k];
+                        os [i + k * 2 + 1] = v;
+                        n++;
+                    }
+            return n == vars.length;
+        }
+
+        // Assigns values to vars, thread bound by this plan; false if names of bindings do not match the plan
+        boolean set (final Bindings[] bs) {
+            for (int j = 0; j < bs.length; j++)
+                if (bs[j] != null)
+                    for (Map.Entry<String, Object> entry : bs[j].entrySet ()) {
+                        Integer x = slots[j].get (entry.getKey ());
+                        if (x == null)
+                            return false;
+                        int k = x;
+                        if (k < 0)
+                            continue;
+                        Object v = entry.getValue ();
+                        if (v != null && v.getClass () != tags[k])
+                            retag (k, v.getClass ());
+                        vars[k].set (v);
+                    }
+            return true;
+        }
+
+        // Counted, so a variant compiled meanwhile against other tags is compiled again (Specializations.compile)
+        private void retag (final int k, final Class<?> c) {
+            NsToken t = tagLock (vars[k]);
+            synchronized (t) {
+                if (setTag (vars[k], Symbol.intern (null, c.getName ())))
+                    t.tags++;
+            }
+            tags[k] = c;
+        }
+
+        int size () {
+            return vars.length;
+        }
+    }
+
+    // Guards tags of bound Vars of a Namespace: set by BindingPlan and for the compilation of a variant
+    private static NsToken tagLock (final Var v) {
+        return nsToken (v.ns);
+    }
+
+    // Sets the tag of a bound Var (with its tagLock held); false if it is not changed
+    private static boolean setTag (final Var v, final Symbol tag) {
+        if (Util.equals (tag, v.getTag ()))
+            return false;
+        v.setTag (tag);
+        return true;
+    }
+
+    // Plan, which addBindings uses for the Bindings in the Namespace, if any
+    private static BindingPlan findBindingPlan (final Namespace ns, final Bindings[] bs) {
+        BindingPlan[] plans = BINDING_PLANS.get (ns);
+        if (plans != null)
+            for (BindingPlan plan : plans)
+                if (plan.matches (bs) && plan.names (bs))
+                    return plan;
+        return null;
+    }
+
     private static IPersistentMap addBindings (final Object[] tbinit, final Bindings... bs) {
         assert tbinit != null;
-        IPersistentMap tb = new PersistentArrayMap (tbinit);
-        Map<Var, Object> mb = null;
-        Namespace ns = null;
+        int n = 0;
         for (Bindings b : bs)
             if (b != null)
-                for (Map.Entry<String, Object> entry : b.entrySet ()) {
-                    String k = entry.getKey ();
-                    if (! (k.startsWith ("javax.script.") || tb.containsKey (k))) {
-                        if (mb == null) {
-                            ns = (Namespace) tb.valAt (RT.CURRENT_NS);
-                            mb = new HashMap<Var, Object> ();
-                        } else if (mb.containsKey (k)) continue;
-
-                        // Create dynamic typed VARs from scripting bindings
-                        Var var = ns.intern (Symbol.intern (null, k)).setDynamic ();
-                        Object v = entry.getValue ();
-                        if (v != null)
-                            var.setTag (Symbol.intern (null, v.getClass ().getName ()));
-                        mb.put (var, v);
+                n += b.size ();
+        if (n == 0)
+            return new PersistentArrayMap (tbinit);
+
+        Namespace ns = null;
+        for (int i = 0; i < tbinit.length && ns == null; i += 2)
+            if (tbinit[i] == RT.CURRENT_NS)
+                ns = (Namespace) tbinit[i + 1];
+        if (ns == null)
+            ns = (Namespace) RT.CURRENT_NS.deref ();
+
+        BindingPlan[] plans = BINDING_PLANS.get (ns);
+        if (plans != null)
+            for (BindingPlan plan : plans)
+                if (plan.matches (bs)) {
+                    Object[] os = copyOf (tbinit, tbinit.length + plan.size () * 2);
+                    if (plan.fill (os, tbinit.length, bs))
+                        return new PersistentArrayMap (os);
+                }
+
+        BindingPlan plan;
+        Object[] os;
+        do {
+            plan = new BindingPlan (ns, bs);
+            os = copyOf (tbinit, tbinit.length + plan.size () * 2);
+        } while (! plan.fill (os, tbinit.length, bs));
+
+        int np = plans == null ? 0 : Math.min (plans.length, BINDING_PLANS_PER_NS - 1);
+        BindingPlan[] plans0 = new BindingPlan [np + 1];
+        plans0[0] = plan;
+        if (np != 0)
+            System.arraycopy (plans, 0, plans0, 1, np);
+        BINDING_PLANS.put (ns, plans0);
+
+        return new PersistentArrayMap (os);
+    }
+
+    /*
+      Compiled scripts (ClojureCompiledScript) are specialized by classes of values of bound Vars, the script refers to
+      (signature): Vars are tagged with these classes at compilation, so interop on them is not reflective,
+      and a variant is compiled per signature. Past SPECIALIZATIONS variants, the generic variant (Vars are not tagged) is used.
+      Reflective call sites are counted by the Compiler warnings (*warn-on-reflection*) at compilation of a variant.
+      Tags are set with the tagLock held, but the compilation runs without it, so scripts of a Namespace compile in parallel
+      (compileAll); a variant is compiled again, if tags were changed meanwhile, and with the lock held after TAG_RETRIES.
+    */
+    private static final int SPECIALIZATIONS = Math.max (0, Integer.getInteger (PACKAGE_NAME + ".SPECIALIZATIONS", 8));
+    private static final int TAG_RETRIES = 2;
+
+    private static final class Variant {
+
+        private final Class<?>[] signature; // null for the generic variant
+        private final IFn fn;
+        private final int reflective; // reflective call sites
+
+        Variant (final Class<?>[] signature, final IFn fn, final int reflective) {
+            this.signature = signature;
+            this.fn = fn;
+            this.reflective = reflective;
+        }
+    }
+
+    private static final class Specializations {
+
+        private final Var[] vars; // bound Vars, the script refers to
+        private volatile Variant[] variants = new Variant [0];
+        private volatile Variant generic;
+        private final AtomicLong reflectiveCalls = new AtomicLong ();
+
+        Specializations (final Var[] vars) {
+            this.vars = vars;
+        }
+
+        // Classes of the values of vars, in the current thread bindings
+        Class<?>[] signature () {
+            Class<?>[] sig = new Class<?> [vars.length];
+            for (int i = 0; i < sig.length; i++) {
+                Object v = vars[i].deref ();
+                sig[i] = v == null || v instanceof Var.Unbound ? null : v.getClass ();
+            }
+            return sig;
+        }
+
+        // Variant for the current thread bindings, null if it must be compiled
+        Variant get () {
+            Variant[] vs = variants;
+            if (vars.length == 0)
+                return vs.length != 0 ? vs[0] : null;
+
+            Class<?>[] sig = signature ();
+            for (Variant v : vs)
+                if (Arrays.equals (v.signature, sig))
+                    return v;
+            return vs.length >= SPECIALIZATIONS ? generic : null;
+        }
+
+        // Any variant, for calls without thread bindings of the engine
+        Variant any () {
+            Variant[] vs = variants;
+            return vs.length != 0 ? vs[0] : generic;
+        }
+
+        // Compiles the variant for the current thread bindings: sets tags of vars and calls the compiler
+        Variant compile (final Callable<?> compiler) throws ScriptException {
+            synchronized (this) {
+                Variant v = get ();
+                if (v != null)
+                    return v;
+
+                Class<?>[] sig = variants.length < SPECIALIZATIONS || vars.length == 0 ? signature () : null;
+                StringWriter err = new StringWriter ();
+                IFn fn;
+                if (vars.length == 0)
+                    fn = compile (compiler, err);
+                else {
+                    NsToken t = tagLock (vars[0]); // vars are of one Namespace
+                    for (int attempt = 0;; attempt++) {
+                        int tags;
+                        synchronized (t) {
+                            for (int i = 0; i < vars.length; i++)
+                                if (setTag (vars[i], sig == null || sig[i] == null ? null : Symbol.intern (null, sig[i].getName ())))
+                                    t.tags++;
+                            tags = t.tags;
+                            if (attempt == TAG_RETRIES) { // tags are not changed until compiled
+                                fn = compile (compiler, err);
+                                break;
+                            }
+                        }
+                        fn = compile (compiler, err);
+                        synchronized (t) {
+                            if (t.tags == tags)
+                                break;
+                        }
+                        err = new StringWriter ();
                     }
                 }
 
-        if (mb == null)
-            return tb;
+                boolean warn = RT.booleanCast (Bootstrap.WARN_ON_REFLECTION.deref ());
 
-        int i = tbinit.length;
-        Object[] os = new Object [i + mb.size () * 2];
-        if (i != 0)
-            System.arraycopy (tbinit, 0, os, 0, i);
-        for (Map.Entry<Var, Object> e : mb.entrySet ()) {
-            os [i++] = e.getKey ();
-            os [i++] = e.getValue ();
+                int reflective = 0;
+                StringBuilder sb = new StringBuilder ();
+                for (String line : err.toString ().split ("\n")) { // reflection warnings are shown, if enabled by the caller
+                    boolean r = line.startsWith ("Reflection warning");
+                    if (r)
+                        reflective++;
+                    if (line.length () != 0 && (warn || ! r))
+                        sb.append (line).append ('\n');
+                }
+                if (sb.length () != 0)
+                    try {
+                        Writer w = (Writer) RT.ERR.deref ();
+                        w.write (sb.toString ());
+                        w.flush ();
+                    } catch (IOException e) {}
+
+                v = new Variant (sig, fn, reflective);
+                if (sig == null)
+                    generic = v;
+                else {
+                    Variant[] vs = Arrays.copyOf (variants, variants.length + 1);
+                    vs[vs.length - 1] = v;
+                    variants = vs;
+                }
+                return v;
+            }
         }
-        return new PersistentArrayMap (os);
+
+        private static IFn compile (final Callable<?> compiler, final StringWriter err) throws ScriptException {
+            return (IFn) callClojure (compiler, mapUniqueKeys (Bootstrap.WARN_ON_REFLECTION, true, RT.ERR, new PrintWriter (err)));
+        }
+
+        IFn fn (final Variant v) {
+            if (v.reflective != 0)
+                reflectiveCalls.incrementAndGet ();
+            return v.fn;
+        }
+
+        // No variant remains to be compiled
+        boolean complete () {
+            return vars.length == 0 ? variants.length != 0 : generic != null;
+        }
+
+        int variantCount () {
+            return variants.length + (generic != null ? 1 : 0);
+        }
+
+        int classCount () {
+            Variant g = generic;
+            int n = g != null ? ClassCache.classCount (g.fn.getClass ()) : 0;
+            for (Variant v : variants) {
+                int c = ClassCache.classCount (v.fn.getClass ());
+                if (c < 0 || n < 0)
+                    return -1;
+                n += c;
+            }
+            return n;
+        }
+
+        int reflectiveSites () {
+            int n = generic != null ? generic.reflective : 0;
+            for (Variant v : variants)
+                n += v.reflective;
+            return n;
+        }
+    }
+
+    // Nodes of the form: collections (with their metadata) and atoms
+    private static int formSize (final Object form) {
+        if (form == null)
+            return 0;
+
+        int n = 1 + (RT.meta (form) != null ? formSize (RT.meta (form)) : 0);
+        if (form instanceof Map)
+            for (Object o : ((Map) form).entrySet ())
+                n += formSize (((Map.Entry) o).getKey ()) + formSize (((Map.Entry) o).getValue ());
+        else if (form instanceof Collection)
+            for (Object o : (Collection) form)
+                n += formSize (o);
+        return n;
+    }
+
+    // Bound Vars (dynamic, interned in the Namespace, without root value), referred by symbols of the form
+    private static Var[] boundVars (final Object form, final Namespace ns) {
+        Set<Var> vars = new LinkedHashSet<Var> ();
+        collectBoundVars (form, ns, vars);
+        return vars.toArray (new Var [vars.size ()]);
+    }
+
+    private static void collectBoundVars (final Object form, final Namespace ns, final Set<Var> vars) {
+        if (form instanceof Symbol) {
+            Object v = ((Symbol) form).getNamespace () == null ? ns.getMapping ((Symbol) form) : null;
+            if (v instanceof Var && ((Var) v).ns == ns && ((Var) v).isDynamic () && ! ((Var) v).hasRoot ())
+                vars.add ((Var) v);
+        } else if (form instanceof Map)
+            for (Object o : ((Map) form).entrySet ()) {
+                collectBoundVars (((Map.Entry) o).getKey (), ns, vars);
+                collectBoundVars (((Map.Entry) o).getValue (), ns, vars);
+            }
+        else if (form instanceof Collection)
+            for (Object o : (Collection) form)
+                collectBoundVars (o, ns, vars);
+    }
+
+    private static Object[] copyOf (final Object[] os, final int length) {
+        Object[] os0 = new Object [length];
+        System.arraycopy (os, 0, os0, 0, Math.min (os.length, length));
+        return os0;
     }
 
     private static Callable asCompilerLoad (final Reader r) {
         if (r == null)
             throw new NullPointerException ("reader is null");
 
+        if (CHECKPOINTS) { // forms are instrumented one by one, as evaluated
+            final Object[] result = new Object[1];
+            final Callable<Object> cc = asEvalForms (r, new FormCallback () {
+                    @Override
+                    public boolean evaluated (final Object o, final int line, final int column) {
+                        result[0] = o;
+                        return true;
+                    }});
+            return new Callable<Object> () {
+                @Override
+                public Object call () throws Exception {
+                    cc.call ();
+                    return result[0];
+                }};
+        }
+
         return new Callable () {
             @Override
             public Object call () {
@@ -224,329 +920,1904 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
             }};
     }
 
-    private static IPersistentMap mapUniqueKeys (final Object... init) {
-        assert init != null;
-        return new PersistentArrayMap (init);
+    // Streaming eval: reads and evaluates forms one by one, with the same thread bindings as Compiler.load
+    private static Callable<Object> asEvalForms (final Reader r, final FormCallback callback) {
+        if (r == null || callback == null)
+            throw new NullPointerException ("reader or callback is null");
+
+        return new Callable<Object> () {
+            @Override
+            public Object call () throws Exception {
+                LineNumberingPushbackReader pr = r instanceof LineNumberingPushbackReader
+                    ? (LineNumberingPushbackReader) r : new LineNumberingPushbackReader (r);
+                Var.pushThreadBindings (mapUniqueKeys (Compiler.LOADER, RT.makeClassLoader (),
+                                                       Compiler.SOURCE_PATH, "NO_SOURCE_FILE",
+                                                       Compiler.SOURCE, "NO_SOURCE_FILE",
+                                                       Compiler.METHOD, null,
+                                                       Compiler.LOCAL_ENV, null,
+                                                       Compiler.LOOP_LOCALS, null,
+                                                       Compiler.NEXT_LOCAL_NUM, 0,
+                                                       RT.READEVAL, RT.T,
+                                                       RT.CURRENT_NS, RT.CURRENT_NS.deref (),
+                                                       Compiler.LINE_BEFORE, pr.getLineNumber (),
+                                                       Compiler.COLUMN_BEFORE, pr.getColumnNumber (),
+                                                       Compiler.LINE_AFTER, pr.getLineNumber (),
+                                                       Compiler.COLUMN_AFTER, pr.getColumnNumber (),
+                                                       RT.UNCHECKED_MATH, RT.UNCHECKED_MATH.deref (),
+                                                       Bootstrap.WARN_ON_REFLECTION, Bootstrap.WARN_ON_REFLECTION.deref (),
+                                                       RT.DATA_READERS, RT.DATA_READERS.deref ()));
+                try {
+                    for (long n = 0;; n++) {
+                        skipBlanks (pr);
+                        int line = pr.getLineNumber (), column = pr.getColumnNumber ();
+                        Object result;
+                        try {
+                            Object form = LispReader.read (pr, false, EOF, false);
+                            if (form == EOF)
+                                return n;
+                            Compiler.LINE_AFTER.set (pr.getLineNumber ());
+                            Compiler.COLUMN_AFTER.set (pr.getColumnNumber ());
+                            result = Compiler.eval (checkpointed (form), false);
+                            Compiler.LINE_BEFORE.set (pr.getLineNumber ());
+                            Compiler.COLUMN_BEFORE.set (pr.getColumnNumber ());
+                        } catch (Exception e) {
+                            throw (ScriptException) new ScriptException (e.toString (), null, line, column).initCause (e);
+                        }
+                        if (! callback.evaluated (result, line, column))
+                            return n + 1;
+                    }
+                } finally {
+                    Var.popThreadBindings ();
+                }
+            }};
+    }
+
+    private static final Object EOF = new Object ();
+
+    // Skips whitespace (commas) and line comments before a form, so the reader is at its line and column
+    private static void skipBlanks (final LineNumberingPushbackReader r) throws IOException {
+        for (int ch; (ch = r.read ()) != -1;)
+            if (ch == ';')
+                while ((ch = r.read ()) != -1 && ch != '\n');
+            else if (! Character.isWhitespace (ch) && ch != ',') {
+                r.unread (ch);
+                return;
+            }
+    }
+
+    private static String readSource (final Reader r) throws ScriptException {
+        if (r == null)
+            throw new NullPointerException ("reader is null");
+
+        StringBuilder sb = new StringBuilder ();
+        char[] buf = new char [4096];
+        try {
+            for (int n; (n = r.read (buf)) != -1;)
+                sb.append (buf, 0, n);
+        } catch (IOException e) {
+            throw new ScriptException (e);
+        }
+        return sb.toString ();
+    }
+
+    private static Object invokeFn (final IFn fn, final Object[] args) {
+        switch (args == null ? 0 : args.length) {
+        case 0: return fn.invoke ();
+        case 1: return fn.invoke (args[0]);
+        case 2: return fn.invoke (args[0], args[1]);
+        case 3: return fn.invoke (args[0], args[1], args[2]);
+        case 4: return fn.invoke (args[0], args[1], args[2], args[3]);
+        case 5: return fn.invoke (args[0], args[1], args[2], args[3], args[4]);
+        case 6: return fn.invoke (args[0], args[1], args[2], args[3], args[4], args[5]);
+        case 7: return fn.invoke (args[0], args[1], args[2], args[3], args[4], args[5], args[6]);
+        default: return fn.applyTo (RT.seq (args));
+        }
     }
 
     /*
-      Namespaces support
+      Primitive invocation (invokeLong/invokeDouble): functions with primitive type hints (^long, ^double) implement
+      IFn$LL, IFn$DD, etc. (up to 4 arguments), which are called without boxing; other functions are called with boxed
+      arguments, and the result is cast (RT.longCast/doubleCast).
     */
-    private static Namespace createNamespace (final String name) {
-        Namespace ns = Namespace.findOrCreate (Symbol.intern (null, name));
-        try {
-            callClojure (new Callable () {
-                    @Override
-                    public Object call () {
-                        return REFER.invoke (RT.CLOJURE_NS.getName ());
-                    }}, mapUniqueKeys (RT.CURRENT_NS, ns));
-        } catch (ScriptException e) {}
-        return ns;
+    private static long invokePrimLong (final Object f) {
+        return f instanceof IFn.L ? ((IFn.L) f).invokePrim () : RT.longCast (((IFn) f).invoke ());
+    }
+
+    private static long invokePrimLong (final Object f, final long a1) {
+        return f instanceof IFn.LL ? ((IFn.LL) f).invokePrim (a1) : RT.longCast (((IFn) f).invoke (a1));
+    }
+
+    private static long invokePrimLong (final Object f, final long a1, final long a2) {
+        return f instanceof IFn.LLL ? ((IFn.LLL) f).invokePrim (a1, a2) : RT.longCast (((IFn) f).invoke (a1, a2));
+    }
+
+    private static long invokePrimLong (final Object f, final long a1, final long a2, final long a3) {
+        return f instanceof IFn.LLLL ? ((IFn.LLLL) f).invokePrim (a1, a2, a3) : RT.longCast (((IFn) f).invoke (a1, a2, a3));
+    }
+
+    private static long invokePrimLong (final Object f, final long a1, final long a2, final long a3, final long a4) {
+        return f instanceof IFn.LLLLL ? ((IFn.LLLLL) f).invokePrim (a1, a2, a3, a4) : RT.longCast (((IFn) f).invoke (a1, a2, a3, a4));
     }
 
-    private static Namespace createNamespace () {
-        return createNamespace (String.format (NS_TEMPLATE, RT.nextID ()));
-    }
+    private static double invokePrimDouble (final Object f) {
+        return f instanceof IFn.D ? ((IFn.D) f).invokePrim () : RT.doubleCast (((IFn) f).invoke ());
+    }
+
+    private static double invokePrimDouble (final Object f, final double a1) {
+        return f instanceof IFn.DD ? ((IFn.DD) f).invokePrim (a1) : RT.doubleCast (((IFn) f).invoke (a1));
+    }
+
+    private static double invokePrimDouble (final Object f, final double a1, final double a2) {
+        return f instanceof IFn.DDD ? ((IFn.DDD) f).invokePrim (a1, a2) : RT.doubleCast (((IFn) f).invoke (a1, a2));
+    }
+
+    private static double invokePrimDouble (final Object f, final double a1, final double a2, final double a3) {
+        return f instanceof IFn.DDDD ? ((IFn.DDDD) f).invokePrim (a1, a2, a3) : RT.doubleCast (((IFn) f).invoke (a1, a2, a3));
+    }
+
+    private static double invokePrimDouble (final Object f, final double a1, final double a2, final double a3, final double a4) {
+        return f instanceof IFn.DDDDD ? ((IFn.DDDDD) f).invokePrim (a1, a2, a3, a4) : RT.doubleCast (((IFn) f).invoke (a1, a2, a3, a4));
+    }
+
+    /*
+      Primitive call with thread bindings of an engine (ClojureScriptEngine.invokeLong/invokeDouble): the result is kept,
+      not boxed. The call object and the binding frame are allocated per call; FunctionHandle calls allocate nothing.
+    */
+    private static final class PrimLongCall implements Callable<Object> {
+
+        private final Object f;
+        private final int arity;
+        private final long a1, a2, a3, a4;
+        long result;
+
+        PrimLongCall (final Object f, final int arity, final long a1, final long a2, final long a3, final long a4) {
+            this.f = f;
+            this.arity = arity;
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+            this.a4 = a4;
+        }
+
+        @Override
+        public Object call () {
+            switch (arity) {
+            case 0: result = invokePrimLong (f); break;
+            case 1: result = invokePrimLong (f, a1); break;
+            case 2: result = invokePrimLong (f, a1, a2); break;
+            case 3: result = invokePrimLong (f, a1, a2, a3); break;
+            default: result = invokePrimLong (f, a1, a2, a3, a4);
+            }
+            return null;
+        }
+    }
+
+    private static final class PrimDoubleCall implements Callable<Object> {
+
+        private final Object f;
+        private final int arity;
+        private final double a1, a2, a3, a4;
+        double result;
+
+        PrimDoubleCall (final Object f, final int arity, final double a1, final double a2, final double a3, final double a4) {
+            this.f = f;
+            this.arity = arity;
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+            this.a4 = a4;
+        }
+
+        @Override
+        public Object call () {
+            switch (arity) {
+            case 0: result = invokePrimDouble (f); break;
+            case 1: result = invokePrimDouble (f, a1); break;
+            case 2: result = invokePrimDouble (f, a1, a2); break;
+            case 3: result = invokePrimDouble (f, a1, a2, a3); break;
+            default: result = invokePrimDouble (f, a1, a2, a3, a4);
+            }
+            return null;
+        }
+    }
+
+    /*
+      Batches (ClojureScript.evalAll/invokeAll with ExecutorService): rows are split into chunks of at least BATCH_CHUNK_SIZE,
+      about 4 chunks per processor, each chunk is a task of the executor.
+    */
+    private static final int BATCH_CHUNK_SIZE = Math.max (1, Integer.getInteger (PACKAGE_NAME + ".BATCH_CHUNK_SIZE", 64));
+
+    private interface Chunk {
+        void run (int from, int to) throws ScriptException;
+    }
+
+    private static void runChunks (final int n, final ExecutorService executor, final Chunk chunk) throws ScriptException {
+        if (executor == null)
+            throw new NullPointerException ("executor is null");
+
+        int tasks = Runtime.getRuntime ().availableProcessors () * 4;
+        int size = Math.max (BATCH_CHUNK_SIZE, (n + tasks - 1) / tasks);
+        List<Future<Object>> fs = new ArrayList<Future<Object>> ();
+        try {
+            for (int from = 0; from < n; from += size) {
+                final int from0 = from;
+                final int to0 = Math.min (n, from + size);
+                fs.add (executor.submit (new Callable<Object> () {
+                        @Override
+                        public Object call () throws ScriptException {
+                            chunk.run (from0, to0);
+                            return null;
+                        }}));
+            }
+            for (Future<Object> f : fs)
+                f.get ();
+        } catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            throw new ScriptException (e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause ();
+            if (t instanceof ScriptException)
+                throw (ScriptException) t;
+            throw (ScriptException) new ScriptException (String.valueOf (t)).initCause (t);
+        } finally {
+            for (Future<Object> f : fs) // remaining tasks after a failure
+                f.cancel (true);
+        }
+    }
+
+    // Runs the worker by n tasks of the executor and by the caller, until all of them are done
+    private static void runWorkers (final int n, final ExecutorService executor, final Runnable worker) throws ScriptException {
+        List<Future<?>> fs = new ArrayList<Future<?>> ();
+        try {
+            for (int i = 0; i < n; i++)
+                fs.add (executor.submit (worker));
+            worker.run ();
+            for (Future<?> f : fs)
+                f.get ();
+        } catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            throw new ScriptException (e);
+        } catch (Exception e) {
+            Throwable t = e instanceof ExecutionException ? e.getCause () : e;
+            throw (ScriptException) new ScriptException (String.valueOf (t)).initCause (t);
+        } finally {
+            for (Future<?> f : fs)
+                f.cancel (true);
+        }
+    }
+
+    /*
+      Captured output (evalCaptured): *out* and *err* of a call are bound to sessions of CaptureBuffers (reused), instead of
+      the writers of the ScriptContext; a session ends with the call, so output of threads of the script, which outlive the call,
+      does not reach the buffer, when it is reused. At most CAPTURE_POOL_SIZE buffers are pooled, buffers grown past
+      CAPTURE_MAX_RETAINED chars are dropped. With CAPTURE_RING_SIZE > 0, each engine keeps the last chars of its captured output.
+    */
+    private static final int CAPTURE_POOL_SIZE = Math.max (0, Integer.getInteger (PACKAGE_NAME + ".CAPTURE_POOL_SIZE", 256));
+    private static final int CAPTURE_MAX_RETAINED = Math.max (16, Integer.getInteger (PACKAGE_NAME + ".CAPTURE_MAX_RETAINED", 64 * 1024));
+    private static final int CAPTURE_RING_SIZE = Math.max (0, Integer.getInteger (PACKAGE_NAME + ".CAPTURE_RING_SIZE", 0));
+    private static final ConcurrentLinkedQueue<CaptureBuffer> CAPTURE_POOL = new ConcurrentLinkedQueue<CaptureBuffer> ();
+    private static final AtomicInteger CAPTURE_POOLED = new AtomicInteger ();
+
+    private static CaptureBuffer acquireCapture () {
+        CaptureBuffer cb = CAPTURE_POOL.poll ();
+        if (cb == null)
+            return new CaptureBuffer (256);
+        CAPTURE_POOLED.decrementAndGet ();
+        return cb;
+    }
+
+    private static void releaseCapture (final CaptureBuffer cb) {
+        if (cb.capacity () > CAPTURE_MAX_RETAINED)
+            return;
+        if (CAPTURE_POOLED.incrementAndGet () <= CAPTURE_POOL_SIZE)
+            CAPTURE_POOL.offer (cb.reset ());
+        else
+            CAPTURE_POOLED.decrementAndGet ();
+    }
+
+    /*
+      Asynchronous evaluation (evalAsync, invokeFunctionAsync): tasks are executed by the executor of the engine
+      (by default shared by engines: virtual threads on JDK 21+, a fixed pool of daemon threads otherwise),
+      at most ASYNC_CONCURRENCY at a time and at most ASYNC_QUEUE_SIZE waiting, in order of submission.
+      Thread bindings of the caller are conveyed to the task, as by clojure.core/binding-conveyor-fn;
+      bindings of the engine are set up by the task itself, as for a synchronous call.
+    */
+    private static final int ASYNC_CONCURRENCY =
+        Math.max (1, Integer.getInteger (PACKAGE_NAME + ".ASYNC_CONCURRENCY", Runtime.getRuntime ().availableProcessors ()));
+    private static final int ASYNC_QUEUE_SIZE = Math.max (0, Integer.getInteger (PACKAGE_NAME + ".ASYNC_QUEUE_SIZE", 1024));
+
+    private static final class AsyncHolder { // default executor is created on first use
+        private static final BoundedExecutor ASYNC = new BoundedExecutor (createAsyncExecutor (), ASYNC_CONCURRENCY, ASYNC_QUEUE_SIZE);
+    }
+
+    private static volatile ExecutorService asyncExecutor; // of AsyncHolder.ASYNC, once created
+
+    private static ExecutorService createAsyncExecutor () {
+        try { // JDK 21+
+            return asyncExecutor = (ExecutorService) Executors.class.getMethod ("newVirtualThreadPerTaskExecutor").invoke (null);
+        } catch (Exception e) {
+            return asyncExecutor = Executors.newFixedThreadPool (ASYNC_CONCURRENCY, new ThreadFactory () {
+                    private final AtomicInteger count = new AtomicInteger ();
+
+                    @Override
+                    public Thread newThread (final Runnable r) {
+                        Thread t = new Thread (r, PACKAGE_NAME + ".async-" + count.incrementAndGet ());
+                        t.setDaemon (true);
+                        return t;
+                    }});
+        }
+    }
+
+    /*
+      Stops threads of the runtime (RuntimePool.discard, by reflection, as the factory is a class of the runtime): agent
+      and future threads (clojure.core/shutdown-agents), the default async executor, the watchdog and the poller of
+      ScriptRepository, those created. Engines of the runtime must not be used after it.
+    */
+    static void shutdownRuntime () {
+        RT.var ("clojure.core", "shutdown-agents").invoke ();
+        ExecutorService async = asyncExecutor;
+        if (async != null)
+            async.shutdownNow ();
+        Deadline.shutdownWatchdog ();
+        ScriptRepository.shutdownPoller ();
+    }
+
+    private static <T> Future<T> submitAsync (final BoundedExecutor async, final Callable<T> c) {
+        final Object frame = Var.cloneThreadBindingFrame ();
+        return (async != null ? async : AsyncHolder.ASYNC).submit (new Callable<T> () {
+                @Override
+                public T call () throws Exception {
+                    Object frame0 = Var.getThreadBindingFrame ();
+                    Var.resetThreadBindingFrame (frame);
+                    try {
+                        return c.call ();
+                    } finally {
+                        Var.resetThreadBindingFrame (frame0);
+                    }
+                }});
+    }
+
+    private static IPersistentMap mapUniqueKeys (final Object... init) {
+        assert init != null;
+        return new PersistentArrayMap (init);
+    }
+
+    /*
+      Namespaces support
+    */
+    private static Namespace createNamespace (final String name) {
+        Namespace ns = Namespace.findOrCreate (Symbol.intern (null, name));
+        return copyPrototype (ns, true) ? ns : referClojure (ns);
+    }
+
+    private static Field getNamespaceField (final String name) {
+        try {
+            Field f = Namespace.class.getDeclaredField (name);
+            f.setAccessible (true);
+            return AtomicReference.class.isAssignableFrom (f.getType ()) ? f : null;
+        } catch (Exception e) { // NoSuchFieldException, SecurityException, InaccessibleObjectException
+            return null;
+        }
+    }
+
+    private static Namespace createPrototype () {
+        if (NS_MAPPINGS == null || NS_ALIASES == null || ! Boolean.parseBoolean (System.getProperty (PACKAGE_NAME + ".NS_PROTOTYPE", "true")))
+            return null;
+
+        final Namespace ns = referClojure (Namespace.findOrCreate (Symbol.intern (null, PACKAGE_NAME + ".prototype")));
+        final String requires = System.getProperty (PACKAGE_NAME + ".NS_PROTOTYPE_REQUIRES", "").trim ();
+        final String init = System.getProperty (PACKAGE_NAME + ".NS_PROTOTYPE_INIT");
+        try {
+            callClojure (new Callable<Object> () {
+                    @Override
+                    public Object call () throws IOException {
+                        if (requires.length () != 0)
+                            for (String lib : requires.split ("[,\\s]+"))
+                                Bootstrap.REQUIRE.invoke (Symbol.intern (null, lib));
+                        if (init != null)
+                            Compiler.loadFile (init);
+                        return null;
+                    }}, mapUniqueKeys (RT.CURRENT_NS, ns));
+        } catch (ScriptException e) {
+            throw new IllegalStateException ("Unable to initialize prototype namespace", e);
+        }
+        return ns;
+    }
+
+    // Shares mappings and aliases of the prototype, if Namespace is new (fresh) or reset is requested
+    @SuppressWarnings ("unchecked")
+    private static boolean copyPrototype (final Namespace ns, final boolean fresh) {
+        if (Bootstrap.NS_PROTOTYPE == null)
+            return false;
+        try {
+            AtomicReference<IPersistentMap> mappings = (AtomicReference<IPersistentMap>) NS_MAPPINGS.get (ns);
+            AtomicReference<IPersistentMap> aliases = (AtomicReference<IPersistentMap>) NS_ALIASES.get (ns);
+            IPersistentMap aliases0 = aliases.get ();
+            if (! fresh) {
+                mappings.set (Bootstrap.NS_PROTOTYPE.getMappings ());
+                aliases.set (Bootstrap.NS_PROTOTYPE.getAliases ());
+            } else if (aliases0.count () == 0 && mappings.compareAndSet (RT.DEFAULT_IMPORTS, Bootstrap.NS_PROTOTYPE.getMappings ()))
+                aliases.compareAndSet (aliases0, Bootstrap.NS_PROTOTYPE.getAliases ());
+            else
+                return false;
+            return true;
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    private static Namespace referClojure (final Namespace ns) {
+        try {
+            callClojure (new Callable () {
+                    @Override
+                    public Object call () {
+                        return Bootstrap.REFER.invoke (RT.CLOJURE_NS.getName ());
+                    }}, mapUniqueKeys (RT.CURRENT_NS, ns));
+        } catch (ScriptException e) {}
+        return ns;
+    }
+
+    /*
+      Namespaces, created per ScriptEngine/ScriptContext, are owned by the engine and released by
+      ClojureScriptEngine.close ()/dispose (ScriptContext): removed (remove-ns), or reset and kept in the pool
+      of NS_POOL_SIZE Namespaces for reuse. With NS_WEAK_CLEANUP, Namespaces of unreachable engines/contexts
+      are released too, checked when a new Namespace is created.
+      Compiled functions are cached per "incarnation" of Namespace (nsToken), which is replaced on release.
+    */
+    private static final int NS_POOL_SIZE = Integer.getInteger (PACKAGE_NAME + ".NS_POOL_SIZE", 0);
+    private static final boolean NS_WEAK_CLEANUP = Boolean.getBoolean (PACKAGE_NAME + ".NS_WEAK_CLEANUP");
+
+    private static final ConcurrentHashMap<Namespace, NamespaceRef> NS_OWNED = new ConcurrentHashMap<Namespace, NamespaceRef> ();
+    private static final ConcurrentHashMap<Namespace, NsToken> NS_TOKENS = new ConcurrentHashMap<Namespace, NsToken> ();
+    private static final ConcurrentLinkedQueue<Namespace> NS_POOL = new ConcurrentLinkedQueue<Namespace> ();
+    private static final AtomicInteger NS_POOLED = new AtomicInteger ();
+    private static final ReferenceQueue<Object> NS_OWNERS = new ReferenceQueue<Object> ();
+
+    private static final class NamespaceRef extends WeakReference<Object> {
+
+        private final Namespace ns;
+
+        NamespaceRef (final Object owner, final Namespace ns) {
+            super (owner, NS_WEAK_CLEANUP ? NS_OWNERS : null);
+            this.ns = ns;
+        }
+    }
+
+    private static Namespace createNamespace (final Object owner) {
+        for (Object ref; (ref = NS_OWNERS.poll ()) != null;)
+            releaseNamespace (((NamespaceRef) ref).ns);
+
+        Namespace ns = NS_POOL.poll ();
+        if (ns != null)
+            NS_POOLED.decrementAndGet ();
+        else
+            ns = createNamespace (String.format (NS_TEMPLATE, RT.nextID ()));
+        NS_OWNED.put (ns, new NamespaceRef (owner, ns));
+        return ns;
+    }
+
+    // Releases Namespace, if it is still owned by the owner (was not released and reused)
+    private static boolean releaseNamespace (final Namespace ns, final Object owner) {
+        NamespaceRef ref = NS_OWNED.get (ns);
+        return ref != null && ref.get () == owner && releaseNamespace (ns);
+    }
+
+    private static boolean releaseNamespace (final Namespace ns) {
+        NamespaceRef ref = NS_OWNED.remove (ns);
+        if (ref == null) // not owned or already released
+            return false;
+        ref.clear ();
+
+        NS_TOKENS.remove (ns);
+        BINDING_PLANS.remove (ns);
+
+        if (NS_POOLED.incrementAndGet () <= NS_POOL_SIZE)
+            NS_POOL.offer (resetNamespace (ns));
+        else {
+            NS_POOLED.decrementAndGet ();
+            Namespace.remove (ns.getName ());
+        }
+        return true;
+    }
+
+    // Removes aliases and all mappings, which are not in a new Namespace (default imports, clojure.core)
+    private static Namespace resetNamespace (final Namespace ns) {
+        if (copyPrototype (ns, false))
+            return ns;
+        for (Object o : ns.getAliases ())
+            ns.removeAlias ((Symbol) ((Map.Entry<?, ?>) o).getKey ());
+        for (Object o : ns.getMappings ()) {
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object v = e.getValue ();
+            if (v != RT.DEFAULT_IMPORTS.valAt (e.getKey ()) && ! (v instanceof Var && ((Var) v).ns == RT.CLOJURE_NS))
+                ns.unmap ((Symbol) e.getKey ());
+        }
+        return referClojure (ns); // restores clojure.core mappings, shadowed by unmapped ones
+    }
+
+    /*
+      Token of the current "incarnation" of a Namespace, replaced on release. Its monitor guards tags of bound Vars
+      of the Namespace (set by BindingPlan and for the compilation of a variant); tags counts the changes.
+    */
+    private static final class NsToken {
+
+        int tags;
+    }
+
+    private static NsToken nsToken (final Namespace ns) {
+        NsToken token = NS_TOKENS.get (ns);
+        if (token == null) {
+            NsToken token0 = NS_TOKENS.putIfAbsent (ns, token = new NsToken ());
+            if (token0 != null)
+                token = token0;
+        }
+        return token;
+    }
+
+    public void addListener (final ScriptListener l) {
+        if (l == null)
+            throw new NullPointerException ("listener is null");
+
+        synchronized (ClojureEngineFactory.class) {
+            ScriptListener[] ls = Arrays.copyOf (LISTENERS, LISTENERS.length + 1);
+            ls[ls.length - 1] = l;
+            LISTENERS = ls;
+        }
+    }
+
+    public void removeListener (final ScriptListener l) {
+        synchronized (ClojureEngineFactory.class) {
+            List<ScriptListener> ls = new ArrayList<ScriptListener> (Arrays.asList (LISTENERS));
+            if (ls.remove (l))
+                LISTENERS = ls.toArray (new ScriptListener [ls.size ()]);
+        }
+    }
+
+    // Built-in metrics (METRICS=true), null if disabled
+    public EngineMetricsMXBean getMetrics () {
+        return METRICS;
+    }
+
+    public CacheStatistics getClassCacheStatistics () {
+        return CLASS_CACHE != null ? CLASS_CACHE.getStatistics () : null;
+    }
+
+    public int getNamespaceCount () {
+        return NS_OWNED.size ();
+    }
+
+    public int getPooledNamespaceCount () {
+        return NS_POOLED.get ();
+    }
+
+    // Class loaders of compiled scripts (LOADER_POLICY), created since start
+    public long getClassLoaderCount () {
+        return ScriptClassLoader.createdCount ();
+    }
+
+    // Classes, defined by class loaders of compiled scripts
+    public long getDefinedClassCount () {
+        return ScriptClassLoader.definedCount ();
+    }
+
+    // Classes of collected class loaders of compiled scripts
+    public long getUnloadedClassCount () {
+        return ScriptClassLoader.unloadedCount ();
+    }
+
+    /*
+      Warm-up in the background (by the default executor of evalAsync): initializes the Clojure runtime and the prototype Namespace,
+      loads libs (require), compiles scripts by an engine of the factory (loading classes they refer to, filling the class cache),
+      and fills the pool of Namespaces (NS_POOL_SIZE). Failures of libs and scripts are reported, not thrown.
+      Compiled scripts are not kept (they belong to the throwaway engine): engines compile them again, faster, with classes loaded
+      and, with CLASS_CACHE_DIR, compiled classes from the class cache.
+    */
+    public Future<WarmUpReport> warmUp (final Collection<String> libs, final Collection<String> scripts) {
+        if (libs == null || scripts == null)
+            throw new NullPointerException ("libs or scripts is null");
+
+        return AsyncHolder.ASYNC.submit (new Callable<WarmUpReport> () {
+                @Override
+                public WarmUpReport call () {
+                    long runtime = Bootstrap.NANOS;
+                    Map<String, Exception> failures = new LinkedHashMap<String, Exception> ();
+
+                    long t0 = System.nanoTime ();
+                    for (final String lib : libs)
+                        try {
+                            callClojure (new Callable<Object> () {
+                                    @Override
+                                    public Object call () {
+                                        return Bootstrap.REQUIRE.invoke (Symbol.intern (lib));
+                                    }}, mapUniqueKeys (RT.CURRENT_NS, Bootstrap.NS_PROTOTYPE != null ? Bootstrap.NS_PROTOTYPE : RT.CLOJURE_NS));
+                        } catch (ScriptException e) {
+                            failures.put (lib, e);
+                        }
+
+                    long t1 = System.nanoTime ();
+                    int compiled = 0;
+                    ClojureEngine engine = new ClojureEngine ();
+                    try {
+                        for (String script : scripts)
+                            try {
+                                SpecializationStatistics s = engine.compile (script).getSpecializationStatistics ();
+                                if (s.getVariantCount () != 0 || s.isGeneric ())
+                                    compiled++;
+                            } catch (ScriptException e) {
+                                failures.put (script, e);
+                            }
+                    } finally {
+                        engine.close ();
+                    }
+
+                    long t2 = System.nanoTime ();
+                    int namespaces = 0;
+                    if (! NS_SHARED) {
+                        for (; NS_POOLED.incrementAndGet () <= NS_POOL_SIZE; namespaces++)
+                            NS_POOL.offer (createNamespace (String.format (NS_TEMPLATE, RT.nextID ())));
+                        NS_POOLED.decrementAndGet ();
+                    }
+
+                    return new WarmUpReport (runtime, t1 - t0, System.nanoTime () - t2, t2 - t1, namespaces, scripts.size (), compiled, failures);
+                }});
+    }
+
+    /*
+      ScriptContext of a thread (THREAD_ISOLATED): ENGINE_SCOPE, Namespace (NS_PER_CONTEXT) and Reader/Writers of its own,
+      GLOBAL_SCOPE of the engine, so setBindings (GLOBAL_SCOPE) in one thread is seen by the others.
+      The value of a ThreadLocal of the engine, so it does not refer to the engine (or the engine would live as long as the thread).
+    */
+    private static final class ThreadContext extends SimpleScriptContext {
+
+        private final AtomicReference<Bindings> global; // of the engine
+        private Namespace ns;
+
+        ThreadContext (final Bindings engineScope, final AtomicReference<Bindings> global) {
+            this.engineScope = engineScope;
+            this.globalScope = global.get ();
+            this.global = global;
+        }
+
+        void setNamespace (final Namespace ns) {
+            this.ns = ns;
+            engineScope.put (NS_KEY, ns);
+        }
+
+        @Override
+        public void setBindings (final Bindings b, final int scope) {
+            super.setBindings (b, scope);
+            if (scope == GLOBAL_SCOPE)
+                global.set (b);
+        }
+
+        ScriptContext current () {
+            globalScope = global.get ();
+            return this;
+        }
+    }
+
+    /*
+      Eval cache support
+    */
+    private static final class EvalKey {
+
+        private final String source;
+        private final Object ns; // nsToken
+        private final Set<String> keys;
+        private final int hash;
+
+        EvalKey (final String source, final Object ns, final Bindings... bs) {
+            Set<String> ks = null;
+            for (Bindings b : bs)
+                if (b != null)
+                    for (String k : b.keySet ())
+                        if (! k.startsWith ("javax.script.")) {
+                            if (ks == null)
+                                ks = new HashSet<String> ();
+                            ks.add (k);
+                        }
+            this.source = source;
+            this.ns = ns;
+            this.keys = ks != null ? ks : Collections.<String>emptySet ();
+            this.hash = (source.hashCode () * 31 + ns.hashCode ()) * 31 + keys.hashCode ();
+        }
+
+        @Override
+        public int hashCode () {
+            return hash;
+        }
+
+        @Override
+        public boolean equals (final Object o) {
+            if (this == o)
+                return true;
+            if (! (o instanceof EvalKey))
+                return false;
+            EvalKey k = (EvalKey) o;
+            return hash == k.hash && ns == k.ns && source.equals (k.source) && keys.equals (k.keys);
+        }
+    }
+
+    public CacheStatistics getEvalCacheStatistics () {
+        return EVAL_CACHE != null ? EVAL_CACHE.getStatistics () : null;
+    }
+
+    public CacheStatistics getDataCacheStatistics () {
+        return DATA_CACHE != null ? DATA_CACHE.getStatistics () : null;
+    }
+
+    /*
+      ScriptEngine
+    */
+
+    private static final String[] NO_PARAMS = new String [0];
+    private static final Keyword ERROR_COLUMN = Keyword.intern ("clojure.error", "column"); // of CompilerException data, from Clojure 1.10
+
+    /*
+      Invocable.getInterface support.
+      For each interface (and with/without "thiz") a factory function is compiled once:
+      (fn* [thiz fs] (reify Interface (^Ret method [this ^P0 p0 ...] (f0 thiz p0 ...)) ...)), with parameter and return types
+      hinted to select overloads, so methods call the functions (fs, resolved by getInterface, wrapped by BoundFn to run
+      with thread bindings of the engine, as by the Proxy) without reflection. If reify is not possible (for example,
+      interface is not visible to Clojure class loader), java.lang.reflect.Proxy implementation is used, as before.
+      Implementations are weakly keyed by the interface, and softly held, as they refer to it (its class loader).
+    */
+    private static final WeakKeyMap<Class<?>, SoftReference<InterfaceImpl>> INTERFACE_IMPLS =
+        new WeakKeyMap<Class<?>, SoftReference<InterfaceImpl>> ();
+    private static final WeakKeyMap<Class<?>, SoftReference<InterfaceImpl>> INTERFACE_IMPLS_THIZ =
+        new WeakKeyMap<Class<?>, SoftReference<InterfaceImpl>> ();
+
+    private static final class InterfaceImpl {
+
+        private final Method[] methods;
+        private final IFn factory; // null, if Proxy must be used
+
+        InterfaceImpl (final Method[] methods, final IFn factory) {
+            this.methods = methods;
+            this.factory = factory;
+        }
+    }
+
+    private static InterfaceImpl getInterfaceImpl (final Class<?> clasz, final boolean thiz) {
+        WeakKeyMap<Class<?>, SoftReference<InterfaceImpl>> impls = thiz ? INTERFACE_IMPLS_THIZ : INTERFACE_IMPLS;
+        SoftReference<InterfaceImpl> ref = impls.get (clasz);
+        InterfaceImpl impl = ref != null ? ref.get () : null;
+        if (impl != null)
+            return impl;
+
+        Map<String, Method> ms = new TreeMap<String, Method> (); // instance methods by signature, in stable order
+        for (Method m : clasz.getMethods ())
+            if (! Modifier.isStatic (m.getModifiers ()))
+                ms.put (m.getName () + Arrays.toString (m.getParameterTypes ()), m);
+        Method[] methods = ms.values ().toArray (new Method [ms.size ()]);
+
+        IFn factory = null;
+        try {
+            final Object form = RT.readString (reifyFactorySource (clasz, methods, thiz));
+            factory = (IFn) callClojure (new Callable<Object> () {
+                    @Override
+                    public Object call () {
+                        return Compiler.eval (form);
+                    }}, mapUniqueKeys (RT.CURRENT_NS, Bootstrap.NS_PROTOTYPE != null ? Bootstrap.NS_PROTOTYPE : RT.CLOJURE_NS,
+                                       Bootstrap.WARN_ON_REFLECTION, false));
+        } catch (Exception e) {} // falls back to Proxy
+
+        impl = new InterfaceImpl (methods, factory);
+        impls.put (clasz, new SoftReference<InterfaceImpl> (impl)); // a concurrent one may be replaced, both work
+        return impl;
+    }
+
+    private static String reifyFactorySource (final Class<?> clasz, final Method[] methods, final boolean thiz) {
+        StringBuilder sb = new StringBuilder ("(fn* [thiz ^objects fs] (let* [");
+        for (int i = 0; i < methods.length; i++)
+            sb.append ("f").append (i).append (" (clojure.core/aget fs ").append (i).append (") ");
+        sb.append ("] (clojure.core/reify ").append (clasz.getName ());
+
+        Set<String> declared = new HashSet<String> ();
+        for (int i = 0; i < methods.length; i++) {
+            Class<?>[] ps = methods[i].getParameterTypes ();
+            declared.add (methods[i].getName () + ps.length);
+            Class<?> rt = methods[i].getReturnType ();
+            sb.append (" (");
+            if (rt != void.class)
+                sb.append (rt.isPrimitive () ? "^" : "^{:tag \"").append (rt.getName ()).append (rt.isPrimitive () ? " " : "\"} ");
+            sb.append (methods[i].getName ()).append (" [this");
+            for (int j = 0; j < ps.length; j++)
+                sb.append (ps[j].isPrimitive () ? " ^" : " ^{:tag \"").append (ps[j].getName ())
+                    .append (ps[j].isPrimitive () ? " p" : "\"} p").append (j);
+            sb.append ("] (f").append (i).append (thiz ? " thiz" : "");
+            for (int j = 0; j < ps.length; j++)
+                sb.append (" p").append (j);
+            sb.append ("))");
+        }
+
+        if (! declared.contains ("toString0"))
+            sb.append (" (toString [this] \"Implementation of ClojureEngine/").append (clasz.toString ()).append ("\")");
+        if (! declared.contains ("hashCode0"))
+            sb.append (" (hashCode [this] ").append (thiz ? "(.hashCode thiz)" : "(System/identityHashCode this)").append (")");
+        if (! declared.contains ("equals1"))
+            sb.append (" (equals [this o] ").append (thiz ? "(.equals thiz o)" : "(clojure.core/identical? this o)").append (")");
+        return sb.append (")))").toString ();
+    }
+
+    private final class ClojureEngine implements ClojureScriptEngine {
+
+        /*
+          ScriptEngine
+        */
+
+        @Override
+        public Bindings createBindings () {
+            // return new SimpleBindings (new ConcurrentHashMap<String, Object> ());
+            // javadoc:ConcurrentHashMap Like Hashtable but unlike HashMap, this class does not allow null to be used as a key or value.
+            // JMeter puts nulls as value
+            return new SimpleBindings (new HashMap<String, Object> ());
+        }
+
+        @Override
+        public Object eval (final Reader r) throws ScriptException {
+            return callClojureA (Operation.EVAL, asEval (r, null, null));
+        }
+
+        @Override
+        public Object eval (final Reader r, final Bindings b) throws ScriptException {
+            return callClojureB (Operation.EVAL, asEval (r, b, null), b);
+        }
+
+        @Override
+        public Object eval (final Reader r, final ScriptContext c) throws ScriptException {
+            return callClojureC (Operation.EVAL, asEval (r, null, c), c);
+        }
+
+        @Override
+        public Object eval (final String s) throws ScriptException {
+            return callClojureA (Operation.EVAL, asEval (s, null, null));
+        }
+
+        @Override
+        public Object eval (final String s, final Bindings b) throws ScriptException {
+            return callClojureB (Operation.EVAL, asEval (s, b, null), b);
+        }
+
+        @Override
+        public Object eval (final String s, final ScriptContext c) throws ScriptException {
+            return callClojureC (Operation.EVAL, asEval (s, null, c), c);
+        }
+
+        @Override
+        public Object get (final String k) {
+            Bindings b = getBindings (ENGINE_SCOPE);
+            return b != null ? b.get (k) : null;
+        }
+
+        @Override
+        public Bindings getBindings (final int scope) {
+            if (scope != GLOBAL_SCOPE && scope != ENGINE_SCOPE)
+                throw new IllegalArgumentException("Invalid scope value.");
+
+            return context ().getBindings (scope);
+        }
+
+        @Override
+        public ScriptContext getContext () {
+            return context ();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory () {
+            return ClojureEngineFactory.this;
+        }
+
+        @Override
+        public void put (final String k, final Object v) {
+            Bindings b = getBindings (ENGINE_SCOPE);
+            if (b != null)
+                b.put (k, v);
+        }
+
+        @Override
+        public void setBindings (final Bindings b, final int scope) {
+            if (scope != GLOBAL_SCOPE && scope != ENGINE_SCOPE)
+                throw new IllegalArgumentException("Invalid scope value.");
+
+            ScriptContext c = context ();
+            if (NS_PER_CONTEXT && scope == ENGINE_SCOPE)
+                b.put (NS_KEY, getContextNS (c));
+
+            c.setBindings (b, scope);
+        }
+
+        @Override
+        public void setContext (final ScriptContext c) {
+            if (c == null)
+                throw new NullPointerException("context is null");
+
+            if (NS_PER_CONTEXT) {
+                Namespace ns = (Namespace) c.getAttribute (NS_KEY, ENGINE_SCOPE);
+                if (ns == null) {
+                    ns = createNamespace (c);
+                    c.setAttribute (NS_KEY, ns, ENGINE_SCOPE);
+                }
+            }
+            if (threadContext != null)
+                threadContext.set (c);
+            else
+                context = c;
+        }
+
+        /*
+          Compilable
+        */
+
+        @Override
+        public ClojureScript compile (final Reader r) throws ScriptException {
+            return compile (r, NO_PARAMS);
+        }
+
+        @Override
+        public ClojureScript compile (final String s) throws ScriptException {
+            return compile (new StringReader (s));
+        }
+
+        /*
+          ClojureScriptEngine
+        */
+
+        @Override
+        public ClojureScript compile (final Reader r, final String... parameters) throws ScriptException {
+            ScriptContext c = context ();
+            return newCompiledScript (r, parameters != null ? parameters.clone () : NO_PARAMS,
+                                      NS_PER_CONTEXT ? getContextNS (c) : namespace, false,
+                                      c.getBindings (ENGINE_SCOPE), c.getBindings (GLOBAL_SCOPE));
+        }
+
+        @Override
+        public ClojureScript compile (final String s, final String... parameters) throws ScriptException {
+            return compile (new StringReader (s), parameters);
+        }
+
+        @Override
+        public CompileReport compileAll (final Map<String, String> sources) throws ScriptException {
+            return compileAll (sources, null);
+        }
+
+        @Override
+        public CompileReport compileAll (final Map<String, String> sources, final ExecutorService executor) throws ScriptException {
+            if (sources == null)
+                throw new NullPointerException ("sources is null");
+
+            long t0 = System.nanoTime ();
+            Map<String, Integer> index = new HashMap<String, Integer> (); // source -> index in unique
+            final List<String> unique = new ArrayList<String> ();
+            for (String s : sources.values ()) {
+                if (s == null)
+                    throw new NullPointerException ("script is null");
+                if (! index.containsKey (s)) {
+                    index.put (s, unique.size ());
+                    unique.add (s);
+                }
+            }
+
+            ScriptContext c = context ();
+            final Namespace ns = NS_PER_CONTEXT ? getContextNS (c) : namespace;
+            final Bindings eb = c.getBindings (ENGINE_SCOPE);
+            final Bindings gb = c.getBindings (GLOBAL_SCOPE);
+            final Object[] compiled = new Object [unique.size ()]; // ClojureScript or ScriptException
+            final AtomicInteger next = new AtomicInteger ();
+            Runnable worker = new Runnable () {
+                    @Override
+                    public void run () {
+                        for (int i; (i = next.getAndIncrement ()) < compiled.length;)
+                            try {
+                                compiled[i] = newCompiledScript (new StringReader (unique.get (i)), NO_PARAMS, ns, true, eb, gb);
+                            } catch (ScriptException e) {
+                                compiled[i] = e;
+                            } catch (RuntimeException e) {
+                                compiled[i] = new ScriptException (e);
+                            }
+                    }};
+
+            if (executor == null)
+                worker.run ();
+            else
+                runWorkers (Math.min (Runtime.getRuntime ().availableProcessors (), compiled.length) - 1, executor, worker);
+
+            Map<String, ClojureScript> scripts = new LinkedHashMap<String, ClojureScript> ();
+            Map<String, ScriptException> failures = new LinkedHashMap<String, ScriptException> ();
+            for (Map.Entry<String, String> e : sources.entrySet ()) {
+                Object o = compiled[index.get (e.getValue ())];
+                if (o instanceof ClojureScript)
+                    scripts.put (e.getKey (), (ClojureScript) o);
+                else
+                    failures.put (e.getKey (), (ScriptException) o);
+            }
+            return new CompileReport (scripts, failures, unique.size (), System.nanoTime () - t0);
+        }
+
+        /*
+          CompiledScript
+        */
+
+        private ClojureCompiledScript newCompiledScript (final Reader r, final String[] params, final Namespace ns, final boolean strict,
+                                                         final Bindings... bs) throws ScriptException {
+            ScriptListener[] ls = LISTENERS;
+            if (ls.length == 0)
+                return new ClojureCompiledScript (r, params, ns, strict, bs);
+
+            long t0 = System.nanoTime ();
+            boolean failed = true;
+            try {
+                ClojureCompiledScript cs = new ClojureCompiledScript (r, params, ns, strict, bs);
+                failed = false;
+                return cs;
+            } finally {
+                fireCompiled (ls, System.nanoTime () - t0, failed);
+            }
+        }
+
+        private final class ClojureCompiledScript extends ClojureScript implements Callable<Object> {
+
+            private final String[] params;
+            private volatile Object parsed; // released, when no variant remains to be compiled (not with NS_PER_CONTEXT)
+            private volatile Specializations compiled;
+            private WeakKeyMap<Object, Specializations> compiledByNS; // nsToken -> Specializations, evicted with released Namespaces
+
+            /*
+              The script is read, and compiled for the given Bindings, if it can be: a compile error (an unbound name, maybe bound
+              by the time of eval) is deferred to eval, unless strict.
+            */
+            ClojureCompiledScript (final Reader r0, final String[] params, final Namespace ns, final boolean strict,
+                                   final Bindings... bs) throws ScriptException {
+                if (r0 == null)
+                    throw new NullPointerException ("reader is null");
+
+                final String source = CLASS_CACHE != null ? readSource (r0) : null;
+                final Reader r = source != null ? new StringReader (source) : r0;
+                this.params = params;
+                final StringBuilder fn = new StringBuilder ("(fn [");
+                for (String p : params) {
+                    if (p == null)
+                        throw new NullPointerException ("parameter is null");
+                    fn.append (p).append (' ');
+                }
+                fn.append ("] ");
+
+                try {
+                    callClojure (new Callable () {
+                            @Override
+                            public Object call () throws ScriptException {
+                                for (String p : ClojureCompiledScript.this.params) { // each parameter must be read as a plain symbol
+                                    Object sym = LispReader.read (new LineNumberingPushbackReader (new StringReader (p + " ")), false, null, false);
+                                    if (! (sym instanceof Symbol && ((Symbol) sym).getNamespace () == null && ((Symbol) sym).getName ().equals (p)))
+                                        throw new IllegalArgumentException ("Invalid parameter name: " + p);
+                                }
+
+                                // parsed = LispReader.read (new LineNumberingPushbackReader (new Reader () ... r ...), null); // from Clojure 1.7.0
+                                parsed = LispReader.read (new LineNumberingPushbackReader (new Reader () {
+                                        private Reader[] readers = {new StringReader (fn.toString ()), r, new StringReader (")")};
+                                        private int pos = 0;
+                                        @Override
+                                        public int read (final char[] cbuf, final int off, final int len) throws IOException {
+                                            for (int res = -1; pos < readers.length; pos++)
+                                                if ((res = readers[pos].read (cbuf, off, len)) != -1)
+                                                    return res;
+                                            return -1;
+                                        }
+
+                                        @Override
+                                        public void close () throws IOException {
+                                            for (Reader r : readers)
+                                                r.close ();
+                                        }}), true, null, false); // from Clojure 1.5.1
+
+                                if (NS_PER_CONTEXT)
+                                    compiledByNS = new WeakKeyMap<Object, Specializations> ();
+                                try { // optionally; may fail due to missing vars/bindings, but try to use Engine/Global bindings
+                                    callClojure (new Callable<Object> () {
+                                            @Override
+                                            public Object call () throws ScriptException {
+                                                Specializations s = new Specializations (boundVars (parsed, ns));
+                                                s.compile (new Callable<Object> () {
+                                                        @Override
+                                                        public Object call () {
+                                                            if (source == null || SPECIALIZATIONS == 0) // the class cache key has classes of bindings
+                                                                return evalScriptFn (checkpointed (parsed));
+                                                            String key = ClassCache.key (source, params, ns, CHECKPOINTS, bs);
+                                                            IFn fn = CLASS_CACHE.load (key);
+                                                            return fn != null ? fn : CLASS_CACHE.eval (key, checkpointed (parsed));
+                                                        }});
+                                                if (NS_PER_CONTEXT)
+                                                    compiledByNS.put (nsToken (ns), s);
+                                                else
+                                                    compiled = s;
+                                                release (s);
+                                                return null;
+                                            }}, addBindings (new Object [0], bs));
+                                } catch (ScriptException e) {
+                                    if (strict)
+                                        throw e;
+                                } catch (RuntimeException e) {
+                                    if (strict)
+                                        throw e;
+                                }
+
+                                return null;
+                            }}, mapUniqueKeys (RT.CURRENT_NS, ns,
+                                               RT.UNCHECKED_MATH, RT.UNCHECKED_MATH.deref (),
+                                               Bootstrap.WARN_ON_REFLECTION, Bootstrap.WARN_ON_REFLECTION.deref (),
+                                               RT.READEVAL, RT.T,
+                                               RT.DATA_READERS, RT.DATA_READERS.deref (),
+                                               // ALLOW_UNRESOLVED_VARS, ALLOW_UNRESOLVED_VARS.deref (),
+                                               Compiler.SOURCE_PATH, null,
+                                               Compiler.SOURCE, "NO_SOURCE_FILE",
+                                               Compiler.METHOD, null,
+                                               Compiler.LOCAL_ENV, null,
+                                               Compiler.LOOP_LOCALS, null,
+                                               Compiler.NEXT_LOCAL_NUM, 0,
+                                               Compiler.LINE_BEFORE, 1,
+                                               Compiler.COLUMN_BEFORE, 1,
+                                               Compiler.LINE_AFTER, 1,
+                                               Compiler.COLUMN_AFTER, 1));
+                } catch (ScriptException e) { // position in the script, without the (fn [...] prefix
+                    if (e.getCause () instanceof Compiler.CompilerException) {
+                        Compiler.CompilerException ce = (Compiler.CompilerException) e.getCause ();
+                        Throwable t = ce.getCause () != null ? ce.getCause () : ce;
+                        int column = RT.intCast (RT.get (ce.getData (), ERROR_COLUMN, -1));
+                        throw (ScriptException) new ScriptException (t.toString (), null, ce.line,
+                                                                     ce.line == 1 && column > fn.length () ? column - fn.length () : column).initCause (ce);
+                    }
+                    if (! (e.getCause () instanceof LispReader.ReaderException))
+                        throw e;
+                    LispReader.ReaderException re = (LispReader.ReaderException) e.getCause ();
+                    Throwable t = re.getCause () != null ? re.getCause () : re;
+                    throw (ScriptException) new ScriptException (t.toString (), null, re.line,
+                                                                 re.line == 1 ? re.column - fn.length () : re.column).initCause (re);
+                }
+            }
+
+            @Override
+            public Object eval () throws ScriptException {
+                return callClojureA (Operation.EVAL_COMPILED, params.length == 0 ? this : withArgs (null, null));
+            }
+
+            @Override
+            public Object eval (final Bindings b) throws ScriptException {
+                return callClojureB (Operation.EVAL_COMPILED, params.length == 0 ? this : withArgs (b, null), b);
+            }
+
+            @Override
+            public Object eval (final ScriptContext c) throws ScriptException {
+                return callClojureC (Operation.EVAL_COMPILED, params.length == 0 ? this : withArgs (null, c), c);
+            }
+
+            @Override
+            public ScriptEngine getEngine () {
+                return ClojureEngine.this;
+            }
+
+            @Override
+            public List<String> getParameters () {
+                return Collections.unmodifiableList (Arrays.asList (params));
+            }
+
+            @Override
+            public Object invoke (final Object... args) throws ScriptException {
+                int n = args == null ? 0 : args.length;
+                if (n != params.length)
+                    throw new IllegalArgumentException ("Wrong number of args (" + n + "), expected " + params.length);
+
+                IFn fn = getFn ();
+                try {
+                    return invokeFn (fn, args);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
+
+            @Override
+            public CapturedResult evalCaptured (final Bindings b) throws ScriptException {
+                ScriptContext c = context ();
+                Bindings eb = b != null ? b : c.getBindings (ENGINE_SCOPE);
+                return callCaptured (Operation.EVAL_COMPILED, params.length == 0 ? this : withArgs (eb, c), eb, c);
+            }
+
+            @Override
+            public Future<Object> evalAsync () {
+                return submitAsync (async, new Callable<Object> () {
+                        @Override
+                        public Object call () throws ScriptException {
+                            return eval ();
+                        }});
+            }
+
+            @Override
+            public Future<Object> evalAsync (final Bindings b) {
+                return submitAsync (async, new Callable<Object> () {
+                        @Override
+                        public Object call () throws ScriptException {
+                            return eval (b);
+                        }});
+            }
+
+            @Override
+            public List<Object> evalAll (final Iterable<? extends Bindings> bindings) throws ScriptException {
+                final Iterator<? extends Bindings> it = bindings.iterator ();
+                final List<Object> results = new ArrayList<Object> ();
+                if (! it.hasNext ())
+                    return results;
+
+                final Bindings b0 = it.next ();
+                callClojureB (Operation.EVAL_BATCH, new Callable<Object> () {
+                        @Override
+                        public Object call () throws ScriptException {
+                            final Bindings gb = context ().getBindings (GLOBAL_SCOPE);
+                            results.add (evalWith (b0, gb));
+
+                            Bindings[] bs = {b0, gb};
+                            BindingPlan plan = findBindingPlan ((Namespace) RT.CURRENT_NS.deref (), bs);
+                            while (it.hasNext ()) {
+                                final Bindings b = it.next ();
+                                if (b == null)
+                                    throw new NullPointerException ("bindings is null");
+
+                                bs[0] = b;
+                                if (plan != null && plan.matches (bs) && plan.set (bs)) // the same names: just assign values
+                                    results.add (evalWith (b, gb));
+                                else
+                                    results.add (callClojure (new Callable<Object> () {
+                                            @Override
+                                            public Object call () throws ScriptException {
+                                                return evalWith (b, gb);
+                                            }}, addBindings (new Object [0], bs)));
+                            }
+                            return null;
+                        }}, b0);
+                return results;
+            }
+
+            @Override
+            public List<Object> evalAll (final List<? extends Bindings> bindings, final ExecutorService executor) throws ScriptException {
+                final Object[] results = new Object [bindings.size ()];
+                runChunks (results.length, executor, new Chunk () {
+                        @Override
+                        public void run (final int from, final int to) throws ScriptException {
+                            List<Object> rs = evalAll (bindings.subList (from, to));
+                            for (int i = from; i < to; i++)
+                                results[i] = rs.get (i - from);
+                        }});
+                return Arrays.asList (results);
+            }
+
+            @Override
+            public void invokeAll (final Object[][] columns, final Object[] results) throws ScriptException {
+                checkColumns (columns, results);
+                invokeRows (getFn (), columns, results, 0, results.length);
+            }
+
+            @Override
+            public void invokeAll (final Object[][] columns, final Object[] results, final ExecutorService executor) throws ScriptException {
+                checkColumns (columns, results);
+                final IFn fn = getFn ();
+                runChunks (results.length, executor, new Chunk () {
+                        @Override
+                        public void run (final int from, final int to) throws ScriptException {
+                            invokeRows (fn, columns, results, from, to);
+                        }});
+            }
+
+            private void checkColumns (final Object[][] columns, final Object[] results) {
+                if (columns == null || results == null)
+                    throw new NullPointerException ("columns or results is null");
+                if (columns.length != params.length)
+                    throw new IllegalArgumentException ("Wrong number of columns (" + columns.length + "), expected " + params.length);
+                for (Object[] column : columns)
+                    if (column.length < results.length)
+                        throw new IllegalArgumentException ("Column is shorter (" + column.length + ") than results (" + results.length + ")");
+            }
+
+            private void invokeRows (final IFn fn, final Object[][] columns, final Object[] results, final int from, final int to) throws ScriptException {
+                Object[] args = new Object [params.length];
+                try {
+                    for (int row = from; row < to; row++) {
+                        if (args.length > 7 && row != from) // args may be kept by IFn.applyTo (rest args)
+                            args = new Object [params.length];
+                        for (int i = 0; i < args.length; i++)
+                            args[i] = columns[i][row];
+                        results[row] = invokeFn (fn, args);
+                    }
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
+
+            // Compiled function for the current context (any variant), compiled in the context of the engine if needed
+            private IFn getFn () throws ScriptException {
+                Specializations s = NS_PER_CONTEXT ? compiledByNS.get (nsToken (getContextNS (context ()))) : compiled;
+                Variant v = s != null ? s.any () : null;
+                return v != null ? s.fn (v) : (IFn) callClojureA (Operation.COMPILE, new Callable<Object> () {
+                        @Override
+                        public Object call () throws ScriptException {
+                            return getCompiled ();
+                        }});
+            }
+
+            @Override
+            public Object call () throws ScriptException { // implements Callable
+                return getCompiled ().invoke ();
+            }
+
+            @Override
+            public SpecializationStatistics getSpecializationStatistics () {
+                Specializations s0 = compiled;
+                Collection<Specializations> ss = NS_PER_CONTEXT ? compiledByNS.values ()
+                    : s0 != null ? Collections.singleton (s0) : Collections.<Specializations>emptySet ();
+                int variants = 0, sites = 0;
+                long calls = 0;
+                boolean generic = false;
+                for (Specializations s : ss) {
+                    variants += s.variants.length;
+                    generic |= s.generic != null;
+                    sites += s.reflectiveSites ();
+                    calls += s.reflectiveCalls.get ();
+                }
+                return new SpecializationStatistics (variants, SPECIALIZATIONS, generic, sites, calls);
+            }
+
+            @Override
+            public RetainedSize getRetainedSize () {
+                Specializations s0 = compiled;
+                Collection<Specializations> ss = NS_PER_CONTEXT ? compiledByNS.values ()
+                    : s0 != null ? Collections.singleton (s0) : Collections.<Specializations>emptySet ();
+                int namespaces = 0, variants = 0, classes = 0;
+                for (Specializations s : ss) {
+                    namespaces++;
+                    variants += s.variantCount ();
+                    int c = s.classCount ();
+                    classes = c < 0 || classes < 0 ? -1 : classes + c;
+                }
+                return new RetainedSize (namespaces, variants, classes, formSize (parsed));
+            }
+
+            // Values of parameters from Bindings (b, or ENGINE_SCOPE of the context) or GLOBAL_SCOPE of the context
+            private Callable<Object> withArgs (final Bindings b, final ScriptContext c) {
+                return new Callable<Object> () {
+                    @Override
+                    public Object call () throws ScriptException {
+                        ScriptContext c0 = c != null ? c : context ();
+                        return evalWith (b != null ? b : c0.getBindings (ENGINE_SCOPE), c0.getBindings (GLOBAL_SCOPE));
+                    }};
+            }
+
+            // Must be called with thread bindings of the engine (*ns*, Bindings as Vars)
+            private Object evalWith (final Bindings eb, final Bindings gb) throws ScriptException {
+                if (params.length == 0)
+                    return call ();
+
+                Object[] args = new Object [params.length];
+                for (int i = 0; i < args.length; i++)
+                    args[i] = eb != null && eb.containsKey (params[i]) ? eb.get (params[i])
+                        : gb != null ? gb.get (params[i]) : null;
+                return invokeFn (getCompiled (), args);
+            }
+
+            // Variant for the classes of bound values, must be called with thread bindings of the engine (*ns*, Bindings as Vars)
+            private IFn getCompiled () throws ScriptException {
+                Specializations s = NS_PER_CONTEXT ? compiledByNS.get (nsToken ((Namespace) RT.CURRENT_NS.deref ())) : compiled;
+                Variant v = s != null ? s.get () : null;
+                if (v != null)
+                    return s.fn (v);
+
+                Specializations s0 = s != null ? s : new Specializations (boundVars (parsed, (Namespace) RT.CURRENT_NS.deref ()));
+                v = s0.compile (new Callable<Object> () {
+                        @Override
+                        public Object call () throws ScriptException {
+                            return callClojure (new Callable<Object> () {
+                                    @Override
+                                    public Object call () {
+                                        return evalScriptFn (checkpointed (parsed));
+                                    }}, mapUniqueKeys (RT.READEVAL, RT.T,
+                                                       RT.DATA_READERS, RT.DATA_READERS.deref (),
+                                                       // ALLOW_UNRESOLVED_VARS, ALLOW_UNRESOLVED_VARS.deref (),
+                                                       // Compiler.LOADER, RT.makeClassLoader(),
+                                                       Compiler.SOURCE_PATH, null,
+                                                       Compiler.SOURCE, "NO_SOURCE_FILE",
+                                                       Compiler.METHOD, null,
+                                                       Compiler.LOCAL_ENV, null,
+                                                       Compiler.LOOP_LOCALS, null,
+                                                       Compiler.NEXT_LOCAL_NUM, 0,
+                                                       Compiler.LINE_BEFORE, 1,
+                                                       Compiler.COLUMN_BEFORE, 1,
+                                                       Compiler.LINE_AFTER, 1,
+                                                       Compiler.COLUMN_AFTER, 1));
+                        }});
+                if (s == null) // kept after the first successful compilation: bound Vars are resolved
+                    if (NS_PER_CONTEXT)
+                        compiledByNS.put (nsToken ((Namespace) RT.CURRENT_NS.deref ()), s0);
+                    else
+                        compiled = s0;
+                release (s0);
+                return s0.fn (v);
+            }
+
+            // Releases the form, when it can not be compiled again (the only Namespace, all variants compiled)
+            private void release (final Specializations s) {
+                if (! NS_PER_CONTEXT && s.complete ())
+                    parsed = null;
+            }
+        }
+
+        /*
+          Invocable
+        */
+
+        @Override
+        public <T> T getInterface (final Class<T> clasz) {
+            // Currently implemented just for completeness of Invocable.
+            // Looks for functions with name "simpleClassName#method" for each interface's methods.
+            return getClojureIF (null, clasz);
+        }
+
+        @Override
+        public <T> T getInterface (final Object thiz, final Class<T> clasz) {
+            // Currently implemented just for completeness of Invocable. Any object can be passed as an argument.
+            // Looks for functions with name "simpleClassName#method" for each interface's methods.
+            // When Interface's methods are invoked, "thiz" is passed as the first argument.
+            if (thiz == null /*|| TODO: Object does not represent a scripting object */)
+                throw new IllegalArgumentException ("Object is null or does not represent a scripting object");
+
+            return getClojureIF (thiz, clasz);
+        }
+
+        @Override
+        public Object invokeFunction (final String name, final Object... args) throws ScriptException, NoSuchMethodException {
+            return callClojureFN (getClojureFN (name), args);
+        }
+
+        @Override
+        public Object invokeMethod (final Object thiz, final String name, final Object... args) throws ScriptException, NoSuchMethodException {
+            if (thiz == null /*|| TODO: specified Object does not represent a scripting object */)
+                throw new IllegalArgumentException ("Object is null or does not represent a scripting object");
+
+            return callClojureFN (getClojureFN (name), thiz, args);
+        }
+
+        /*
+          ClojureScriptEngine (streaming evaluation)
+        */
+
+        @Override
+        public long evalForms (final Reader r, final FormCallback callback) throws ScriptException {
+            return (Long) callClojureA (Operation.EVAL, asEvalForms (r, callback));
+        }
+
+        @Override
+        public long evalForms (final Reader r, final ScriptContext c, final FormCallback callback) throws ScriptException {
+            return (Long) callClojureC (Operation.EVAL, asEvalForms (r, callback), c);
+        }
+
+        /*
+          ClojureScriptEngine (deadlines)
+        */
 
-    /*
-      ScriptEngine
-    */
+        @Override
+        public void setTimeout (final long millis) {
+            if (millis < 0)
+                throw new IllegalArgumentException ("timeout must not be negative: " + millis);
+            timeout = millis;
+        }
 
-    private final class ClojureEngine implements ScriptEngine, Compilable, Invocable {
+        @Override
+        public long getTimeout () {
+            return timeout;
+        }
 
         /*
-          ScriptEngine
+          ClojureScriptEngine (asynchronous evaluation)
         */
 
         @Override
-        public Bindings createBindings () {
-            // return new SimpleBindings (new ConcurrentHashMap<String, Object> ());
-            // javadoc:ConcurrentHashMap Like Hashtable but unlike HashMap, this class does not allow null to be used as a key or value.
-            // JMeter puts nulls as value
-            return new SimpleBindings (new HashMap<String, Object> ());
+        public void setExecutor (final ExecutorService executor) {
+            async = executor != null ? new BoundedExecutor (executor, ASYNC_CONCURRENCY, ASYNC_QUEUE_SIZE) : null;
         }
 
         @Override
-        public Object eval (final Reader r) throws ScriptException {
-            return callClojureA (asCompilerLoad (r));
+        public Future<Object> evalAsync (final String s) {
+            return submitAsync (async, new Callable<Object> () {
+                    @Override
+                    public Object call () throws ScriptException {
+                        return eval (s);
+                    }});
         }
 
         @Override
-        public Object eval (final Reader r, final Bindings b) throws ScriptException {
-            return callClojureB (asCompilerLoad (r), b);
+        public Future<Object> evalAsync (final String s, final Bindings b) {
+            return submitAsync (async, new Callable<Object> () {
+                    @Override
+                    public Object call () throws ScriptException {
+                        return eval (s, b);
+                    }});
         }
 
         @Override
-        public Object eval (final Reader r, final ScriptContext c) throws ScriptException {
-            return callClojureC (asCompilerLoad (r), c);
+        public Object readData (final Reader r) throws ScriptException {
+            return ClojureEngineFactory.readData (readSource (r)).value;
         }
 
         @Override
-        public Object eval (final String s) throws ScriptException {
-            return eval (new StringReader (s));
+        public Object readData (final String s) throws ScriptException {
+            return ClojureEngineFactory.readData (s).value;
         }
 
         @Override
-        public Object eval (final String s, final Bindings b) throws ScriptException {
-            return eval (new StringReader (s), b);
+        public CapturedResult evalCaptured (final String s) throws ScriptException {
+            ScriptContext c = context ();
+            return callCaptured (Operation.EVAL, asEval (s, null, c), c.getBindings (ENGINE_SCOPE), c);
         }
 
         @Override
-        public Object eval (final String s, final ScriptContext c) throws ScriptException {
-            return eval (new StringReader (s), c);
+        public CapturedResult evalCaptured (final String s, final Bindings b) throws ScriptException {
+            if (b == null)
+                throw new NullPointerException ("bindings is null");
+
+            ScriptContext c = context ();
+            return callCaptured (Operation.EVAL, asEval (s, b, c), b, c);
         }
 
         @Override
-        public Object get (final String k) {
-            Bindings b = getBindings (ENGINE_SCOPE);
-            return b != null ? b.get (k) : null;
+        public String getRecentOutput () {
+            return ring != null ? ring.toString () : null;
         }
 
         @Override
-        public Bindings getBindings (final int scope) {
-            if (scope != GLOBAL_SCOPE && scope != ENGINE_SCOPE)
-                throw new IllegalArgumentException("Invalid scope value.");
+        public Future<Object> evalAsync (final String s, final ScriptContext c) {
+            return submitAsync (async, new Callable<Object> () {
+                    @Override
+                    public Object call () throws ScriptException {
+                        return eval (s, c);
+                    }});
+        }
 
-            return context.getBindings (scope);
+        @Override
+        public Future<Object> invokeFunctionAsync (final String name, final Object... args) {
+            return submitAsync (async, new Callable<Object> () {
+                    @Override
+                    public Object call () throws ScriptException, NoSuchMethodException {
+                        return invokeFunction (name, args);
+                    }});
         }
 
+        /*
+          ClojureScriptEngine (functions)
+        */
+
         @Override
-        public ScriptContext getContext () {
-            return context;
+        public FunctionHandle getFunction (final String name) throws NoSuchMethodException {
+            Namespace ns = NS_PER_CONTEXT ? getContextNS (context ()) : namespace;
+            getClojureFN (name, ns); // must be a function now
+            return new ClojureFunctionHandle (name, getClojureVar (name, ns));
         }
 
+        /*
+          ClojureScriptEngine (primitive invocation)
+        */
+
         @Override
-        public ScriptEngineFactory getFactory () {
-            return ClojureEngineFactory.this;
+        public long invokeLong (final String name) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimLongCall (getClojureFN (name), 0, 0, 0, 0, 0));
         }
 
         @Override
-        public void put (final String k, final Object v) {
-            Bindings b = getBindings (ENGINE_SCOPE);
-            if (b != null)
-                b.put (k, v);
+        public long invokeLong (final String name, final long a1) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimLongCall (getClojureFN (name), 1, a1, 0, 0, 0));
         }
 
         @Override
-        public void setBindings (final Bindings b, final int scope) {
-            if (scope != GLOBAL_SCOPE && scope != ENGINE_SCOPE)
-                throw new IllegalArgumentException("Invalid scope value.");
+        public long invokeLong (final String name, final long a1, final long a2) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimLongCall (getClojureFN (name), 2, a1, a2, 0, 0));
+        }
 
-            if (NS_PER_CONTEXT && scope == ENGINE_SCOPE)
-                b.put (NS_KEY, getContextNS (context));
+        @Override
+        public long invokeLong (final String name, final long a1, final long a2, final long a3) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimLongCall (getClojureFN (name), 3, a1, a2, a3, 0));
+        }
 
-            context.setBindings (b, scope);
+        @Override
+        public long invokeLong (final String name, final long a1, final long a2, final long a3, final long a4) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimLongCall (getClojureFN (name), 4, a1, a2, a3, a4));
         }
 
         @Override
-        public void setContext (final ScriptContext c) {
-            if (c == null)
-                throw new NullPointerException("context is null");
+        public double invokeDouble (final String name) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimDoubleCall (getClojureFN (name), 0, 0, 0, 0, 0));
+        }
 
-            if (NS_PER_CONTEXT) {
-                Namespace ns = (Namespace) c.getAttribute (NS_KEY, ENGINE_SCOPE);
-                if (ns == null) {
-                    ns = createNamespace ();
-                    c.setAttribute (NS_KEY, ns, ENGINE_SCOPE);
-                }
-                namespace = ns;
-            }
-            context = c;
+        @Override
+        public double invokeDouble (final String name, final double a1) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimDoubleCall (getClojureFN (name), 1, a1, 0, 0, 0));
         }
 
-        /*
-          Compilable
-        */
+        @Override
+        public double invokeDouble (final String name, final double a1, final double a2) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimDoubleCall (getClojureFN (name), 2, a1, a2, 0, 0));
+        }
 
         @Override
-        public CompiledScript compile (final Reader r) throws ScriptException {
-            return new ClojureCompiledScript (r);
+        public double invokeDouble (final String name, final double a1, final double a2, final double a3) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimDoubleCall (getClojureFN (name), 3, a1, a2, a3, 0));
         }
 
         @Override
-        public CompiledScript compile (final String s) throws ScriptException {
-            return compile (new StringReader (s));
+        public double invokeDouble (final String name, final double a1, final double a2, final double a3, final double a4) throws ScriptException, NoSuchMethodException {
+            return callClojurePrim (new PrimDoubleCall (getClojureFN (name), 4, a1, a2, a3, a4));
         }
 
-        /*
-          CompiledScript
-        */
+        private long callClojurePrim (final PrimLongCall cc) throws ScriptException {
+            callClojureZ (Operation.INVOKE_FUNCTION, cc, context ());
+            return cc.result;
+        }
 
-        private final class ClojureCompiledScript extends CompiledScript implements Callable {
+        private double callClojurePrim (final PrimDoubleCall cc) throws ScriptException {
+            callClojureZ (Operation.INVOKE_FUNCTION, cc, context ());
+            return cc.result;
+        }
 
-            private Object parsed;
-            private IFn compiled;
-            private Map<Namespace, IFn> compiledByNS;
+        @Override
+        public CacheStatistics getFunctionCacheStatistics () {
+            return fnCache != null ? fnCache.getStatistics () : null;
+        }
 
-            ClojureCompiledScript (final Reader r) throws ScriptException {
-                if (r == null)
-                    throw new NullPointerException ("reader is null");
+        private final class ClojureFunctionHandle extends FunctionHandle {
 
-                final ScriptContext c = ClojureEngine.this.context;
-                final Namespace ns = NS_PER_CONTEXT ? getContextNS (c) : ClojureEngine.this.namespace;
+            private final String name;
+            private final Var var; // Var.invoke derefs the function on each call
 
-                callClojure (new Callable () {
-                        @Override
-                        public Object call () {
-                            // parsed = LispReader.read (new LineNumberingPushbackReader (new Reader () ... r ...), null); // from Clojure 1.7.0
-                            parsed = LispReader.read (new LineNumberingPushbackReader (new Reader () {
-                                    private Reader[] readers = {new StringReader ("(fn [] "), r, new StringReader (")")};
-                                    private int pos = 0;
-                                    @Override
-                                    public int read (final char[] cbuf, final int off, final int len) throws IOException {
-                                        for (int res = -1; pos < readers.length; pos++)
-                                            if ((res = readers[pos].read (cbuf, off, len)) != -1)
-                                                return res;
-                                        return -1;
-                                    }
+            ClojureFunctionHandle (final String name, final Var var) {
+                this.name = name;
+                this.var = var;
+            }
 
-                                    @Override
-                                    public void close () throws IOException {
-                                        for (Reader r : readers)
-                                            r.close ();
-                                    }}), true, null, false); // from Clojure 1.5.1
-
-                            if (NS_PER_CONTEXT)
-                                compiledByNS = new ConcurrentHashMap<Namespace, IFn> ();
-                            try { // optionally; may fail due to missing vars/bindings, but try to use Engine/Global bindings
-                                IFn compiled0 = (IFn) callClojure (new Callable () {
-                                        @Override
-                                        public Object call () {
-                                            return Compiler.eval (parsed, false);
-                                        }}, addBindings (new Object [0], c.getBindings (ENGINE_SCOPE), c.getBindings (GLOBAL_SCOPE)));
-                                if (NS_PER_CONTEXT)
-                                    compiledByNS.put (ns, compiled0);
-                                else
-                                    compiled = compiled0;
-                            } catch (Exception e) {}
+            @Override
+            public String getName () {
+                return name;
+            }
 
-                            return null;
-                        }}, mapUniqueKeys (RT.CURRENT_NS, ns,
-                                           RT.UNCHECKED_MATH, RT.UNCHECKED_MATH.deref (),
-                                           WARN_ON_REFLECTION, WARN_ON_REFLECTION.deref (),
-                                           RT.READEVAL, RT.T,
-                                           RT.DATA_READERS, RT.DATA_READERS.deref (),
-                                           // ALLOW_UNRESOLVED_VARS, ALLOW_UNRESOLVED_VARS.deref (),
-                                           Compiler.LOADER, RT.makeClassLoader(),
-                                           Compiler.SOURCE_PATH, null,
-                                           Compiler.SOURCE, "NO_SOURCE_FILE",
-                                           Compiler.METHOD, null,
-                                           Compiler.LOCAL_ENV, null,
-                                           Compiler.LOOP_LOCALS, null,
-                                           Compiler.NEXT_LOCAL_NUM, 0,
-                                           Compiler.LINE_BEFORE, 1,
-                                           Compiler.COLUMN_BEFORE, 1,
-                                           Compiler.LINE_AFTER, 1,
-                                           Compiler.COLUMN_AFTER, 1));
+            @Override
+            public Object invoke () throws ScriptException {
+                try {
+                    return var.invoke ();
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
             }
 
             @Override
-            public Object eval () throws ScriptException {
-                return callClojureA (this);
+            public Object invoke (final Object a1) throws ScriptException {
+                try {
+                    return var.invoke (a1);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
             }
 
             @Override
-            public Object eval (final Bindings b) throws ScriptException {
-                return callClojureB (this, b);
+            public Object invoke (final Object a1, final Object a2) throws ScriptException {
+                try {
+                    return var.invoke (a1, a2);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
             }
 
             @Override
-            public Object eval (final ScriptContext c) throws ScriptException {
-                return callClojureC (this, c);
+            public Object invoke (final Object a1, final Object a2, final Object a3) throws ScriptException {
+                try {
+                    return var.invoke (a1, a2, a3);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
             }
 
             @Override
-            public ScriptEngine getEngine () {
-                return ClojureEngine.this;
+            public Object invoke (final Object a1, final Object a2, final Object a3, final Object a4) throws ScriptException {
+                try {
+                    return var.invoke (a1, a2, a3, a4);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
             }
 
             @Override
-            public Object call () throws ScriptException { // implements Callable
-                if (compiled != null)
-                    return compiled.invoke ();
+            public Object invokeWithArguments (final Object... args) throws ScriptException {
+                try {
+                    return invokeFn (var, args);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
 
-                IFn compiled0 = null;
-                Namespace ns = null;
-                if (NS_PER_CONTEXT) {
-                    ns = (Namespace) RT.CURRENT_NS.deref ();
-                    compiled0 = compiledByNS.get (ns);
+            @Override
+            public long invokeLong () throws ScriptException {
+                try {
+                    return invokePrimLong (var.deref ());
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
                 }
+            }
 
-                if (compiled0 == null) {
-                    compiled0 = (IFn) callClojure (new Callable () {
-                            @Override
-                            public Object call () {
-                                return Compiler.eval (parsed);
-                            }}, mapUniqueKeys (RT.READEVAL, RT.T,
-                                               RT.DATA_READERS, RT.DATA_READERS.deref (),
-                                               // ALLOW_UNRESOLVED_VARS, ALLOW_UNRESOLVED_VARS.deref (),
-                                               // Compiler.LOADER, RT.makeClassLoader(),
-                                               Compiler.SOURCE_PATH, null,
-                                               Compiler.SOURCE, "NO_SOURCE_FILE",
-                                               Compiler.METHOD, null,
-                                               Compiler.LOCAL_ENV, null,
-                                               Compiler.LOOP_LOCALS, null,
-                                               Compiler.NEXT_LOCAL_NUM, 0,
-                                               Compiler.LINE_BEFORE, 1,
-                                               Compiler.COLUMN_BEFORE, 1,
-                                               Compiler.LINE_AFTER, 1,
-                                               Compiler.COLUMN_AFTER, 1));
-                    if (NS_PER_CONTEXT)
-                        compiledByNS.put (ns, compiled0);
-                    else
-                        compiled = compiled0;
+            @Override
+            public long invokeLong (final long a1) throws ScriptException {
+                try {
+                    return invokePrimLong (var.deref (), a1);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
                 }
-                return compiled0.invoke ();
             }
-        }
 
-        /*
-          Invocable
-        */
+            @Override
+            public long invokeLong (final long a1, final long a2) throws ScriptException {
+                try {
+                    return invokePrimLong (var.deref (), a1, a2);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
 
-        @Override
-        public <T> T getInterface (final Class<T> clasz) {
-            // Currently implemented just for completeness of Invocable.
-            // Looks for functions with name "simpleClassName#method" for each interface's methods.
-            return getClojureIF (null, clasz);
-        }
+            @Override
+            public long invokeLong (final long a1, final long a2, final long a3) throws ScriptException {
+                try {
+                    return invokePrimLong (var.deref (), a1, a2, a3);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
 
-        @Override
-        public <T> T getInterface (final Object thiz, final Class<T> clasz) {
-            // Currently implemented just for completeness of Invocable. Any object can be passed as an argument.
-            // Looks for functions with name "simpleClassName#method" for each interface's methods.
-            // When Interface's methods are invoked, "thiz" is passed as the first argument.
-            if (thiz == null /*|| TODO: Object does not represent a scripting object */)
-                throw new IllegalArgumentException ("Object is null or does not represent a scripting object");
+            @Override
+            public long invokeLong (final long a1, final long a2, final long a3, final long a4) throws ScriptException {
+                try {
+                    return invokePrimLong (var.deref (), a1, a2, a3, a4);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
 
-            return getClojureIF (thiz, clasz);
+            @Override
+            public double invokeDouble () throws ScriptException {
+                try {
+                    return invokePrimDouble (var.deref ());
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
+
+            @Override
+            public double invokeDouble (final double a1) throws ScriptException {
+                try {
+                    return invokePrimDouble (var.deref (), a1);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
+
+            @Override
+            public double invokeDouble (final double a1, final double a2) throws ScriptException {
+                try {
+                    return invokePrimDouble (var.deref (), a1, a2);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
+
+            @Override
+            public double invokeDouble (final double a1, final double a2, final double a3) throws ScriptException {
+                try {
+                    return invokePrimDouble (var.deref (), a1, a2, a3);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
+
+            @Override
+            public double invokeDouble (final double a1, final double a2, final double a3, final double a4) throws ScriptException {
+                try {
+                    return invokePrimDouble (var.deref (), a1, a2, a3, a4);
+                } catch (RuntimeException e) {
+                    throw new ScriptException (e);
+                }
+            }
+
+            @Override
+            public Object invokeFunction (final Object... args) throws ScriptException {
+                return callClojureFN (var, args);
+            }
+
+            @Override
+            public String toString () {
+                return "FunctionHandle[" + name + " " + var + "]";
+            }
         }
 
+        /*
+          ClojureScriptEngine (lifecycle)
+        */
+
         @Override
-        public Object invokeFunction (final String name, final Object... args) throws ScriptException, NoSuchMethodException {
-            return callClojureFN (getClojureFN (name), args);
+        public void close () {
+            if (closed)
+                return;
+            closed = true;
+            if (evalCache != null)
+                evalCache.clear ();
+            releaseNamespace (namespace);
+            for (ThreadContext c; (c = threadContexts.poll ()) != null;)
+                releaseNamespace (c.ns, c);
         }
 
         @Override
-        public Object invokeMethod (final Object thiz, final String name, final Object... args) throws ScriptException, NoSuchMethodException {
-            if (thiz == null /*|| TODO: specified Object does not represent a scripting object */)
-                throw new IllegalArgumentException ("Object is null or does not represent a scripting object");
+        public void dispose (final ScriptContext c) {
+            if (c == null)
+                throw new NullPointerException ("context is null");
 
-            return callClojureFN (getClojureFN (name), thiz, args);
+            if (NS_PER_CONTEXT) {
+                Namespace ns = (Namespace) c.getAttribute (NS_KEY, ENGINE_SCOPE);
+                if (ns != null && ns != namespace && ns != getContextNS (context ())) {
+                    c.removeAttribute (NS_KEY, ENGINE_SCOPE);
+                    releaseNamespace (ns);
+                }
+            }
         }
 
         /*
           Non-interface methods
         */
 
-        // TODO: ? Rewrite ScriptContext, for ConcurrentHashMap as bindings
-        private ScriptContext context = new SimpleScriptContext ();
-        private Namespace namespace = NS_FORCED != null ? NS_FORCED : createNamespace ();
+        private final Namespace namespace = Bootstrap.NS_FORCED != null ? Bootstrap.NS_FORCED : createNamespace (this);
+        private final LRUCache<EvalKey, ClojureCompiledScript> evalCache =
+            EVAL_CACHE != null ? new LRUCache<EvalKey, ClojureCompiledScript> (EVAL_CACHE_SIZE, EVAL_CACHE) : null;
+        private final LRUCache<String, ResolvedFn> fnCache = FN_CACHE_SIZE > 0 ? new LRUCache<String, ResolvedFn> (FN_CACHE_SIZE) : null;
+        private volatile boolean closed;
+        private volatile BoundedExecutor async; // null: shared by engines
+        private volatile long timeout = TIMEOUT_MILLIS;
+        private final OutputRing ring = CAPTURE_RING_SIZE > 0 ? new OutputRing (CAPTURE_RING_SIZE) : null;
+
+        // Default ScriptContext: shared by threads (context), or per thread (threadContext, THREAD_ISOLATED)
+        private volatile ScriptContext context;
+        private final ThreadLocal<ScriptContext> threadContext;
+        private final AtomicReference<Bindings> globalBindings = new AtomicReference<Bindings> (); // GLOBAL_SCOPE of the contexts of threads
+        private final AtomicBoolean namespaceUsed = new AtomicBoolean ();
+        private final ConcurrentLinkedQueue<ThreadContext> threadContexts = new ConcurrentLinkedQueue<ThreadContext> (); // with Namespaces
 
         {
-            context.setBindings (createBindings (), ENGINE_SCOPE);
-            if (NS_PER_CONTEXT)
-                context.setAttribute (NS_KEY, namespace, ENGINE_SCOPE);
+            if (THREAD_ISOLATED)
+                threadContext = new ThreadLocal<ScriptContext> () {
+                        @Override
+                        protected ScriptContext initialValue () {
+                            return createThreadContext ();
+                        }};
+            else {
+                threadContext = null;
+                ScriptContext c = new SimpleScriptContext ();
+                c.setBindings (createBindings (), ENGINE_SCOPE);
+                if (NS_PER_CONTEXT)
+                    c.setAttribute (NS_KEY, namespace, ENGINE_SCOPE);
+                context = c;
+            }
+        }
+
+        private ThreadContext createThreadContext () {
+            ThreadContext c = new ThreadContext (createBindings (), globalBindings);
+            if (NS_PER_CONTEXT) { // the first thread gets Namespace of the engine
+                c.setNamespace (namespaceUsed.compareAndSet (false, true) ? namespace : createNamespace (c));
+                if (c.ns != namespace)
+                    threadContexts.offer (c);
+            }
+            return c;
+        }
+
+        private ScriptContext context () {
+            if (threadContext == null)
+                return context;
+            ScriptContext c = threadContext.get ();
+            return c instanceof ThreadContext ? ((ThreadContext) c).current () : c;
         }
 
         private Namespace getContextNS (final ScriptContext c) {
@@ -554,29 +2825,100 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
             return ns != null ? ns : namespace;
         }
 
-        private Object callClojureZ (final Callable cc, final Bindings b, final ScriptContext c) throws ScriptException {
-            return callClojure (cc, addBindings (new Object[] {
-                        RT.CURRENT_NS, NS_PER_CONTEXT ? getContextNS (c) : namespace,
-                        RT.UNCHECKED_MATH, RT.UNCHECKED_MATH.deref (),
-                        WARN_ON_REFLECTION, WARN_ON_REFLECTION.deref (),
-                        // RT.IN, new LineNumberingPushbackReader (c.getReader ()),
-                        RT.IN, c.getReader (),
-                        RT.OUT, c.getWriter (),
-                        RT.ERR, c.getErrorWriter ()},
-                    b, c.getBindings (GLOBAL_SCOPE)));
+        private Object callClojureZ (final Operation op, final Callable<?> cc, final Bindings b, final ScriptContext c) throws ScriptException {
+            return callClojureZ (op, cc, b, c, c.getWriter (), c.getErrorWriter ());
+        }
+
+        private Object callClojureZ (final Operation op, final Callable<?> cc, final Bindings b, final ScriptContext c,
+                                     final Writer out, final Writer err) throws ScriptException {
+            if (closed)
+                throw new IllegalStateException ("engine is closed");
+
+            ScriptListener[] ls = LISTENERS;
+            if (ls.length == 0)
+                return callClojure (cc, engineBindings (b, c, out, err), getTimeout (b, c));
+
+            long t0 = System.nanoTime ();
+            boolean failed = true;
+            try {
+                IPersistentMap tb = engineBindings (b, c, out, err);
+                fireBound (ls, tb.count ());
+                Object o = callClojure (cc, tb, getTimeout (b, c));
+                failed = false;
+                return o;
+            } finally {
+                fireCalled (ls, op, System.nanoTime () - t0, failed);
+            }
+        }
+
+        private Object callClojureZ (final Operation op, final Callable<?> cc, final ScriptContext c) throws ScriptException {
+            return callClojureZ (op, cc, c.getBindings (ENGINE_SCOPE), c);
         }
 
-        private Object callClojureZ (final Callable cc, final ScriptContext c) throws ScriptException {
-            return callClojureZ (cc, c.getBindings (ENGINE_SCOPE), c);
+        // TIMEOUT of the Bindings, ScriptContext, or engine
+        private long getTimeout (final Bindings b, final ScriptContext c) {
+            Object t = b != null ? b.get (TIMEOUT) : null;
+            if (t == null)
+                t = c.getAttribute (TIMEOUT);
+            return t instanceof Number ? ((Number) t).longValue () : timeout;
         }
 
-        private IFn getClojureFN (final String name, final Namespace ns) throws NoSuchMethodException {
+        // Call with *out* and *err* bound to pooled buffers, returned with the result (and appended to the ring, if any)
+        private CapturedResult callCaptured (final Operation op, final Callable<?> cc, final Bindings b, final ScriptContext c) throws ScriptException {
+            CaptureBuffer ob = acquireCapture ();
+            CaptureBuffer eb = acquireCapture ();
+            CaptureBuffer.Session out = new CaptureBuffer.Session (ob);
+            CaptureBuffer.Session err = new CaptureBuffer.Session (eb);
+            try {
+                Object o = callClojureZ (op, cc, b, c, out, err);
+                CapturedResult r = new CapturedResult (o, out.end (), err.end ());
+                if (ring != null)
+                    ring.append (r.getOut (), r.getErr ());
+                return r;
+            } finally {
+                out.end ();
+                err.end ();
+                releaseCapture (ob);
+                releaseCapture (eb);
+            }
+        }
+
+        private IPersistentMap engineBindings (final Bindings b, final ScriptContext c, final Writer out, final Writer err) {
+            return addBindings (new Object[] {
+                    RT.CURRENT_NS, NS_PER_CONTEXT ? getContextNS (c) : namespace,
+                    RT.UNCHECKED_MATH, RT.UNCHECKED_MATH.deref (),
+                    Bootstrap.WARN_ON_REFLECTION, Bootstrap.WARN_ON_REFLECTION.deref (),
+                    // RT.IN, new LineNumberingPushbackReader (c.getReader ()),
+                    RT.IN, c.getReader (),
+                    RT.OUT, out,
+                    RT.ERR, err},
+                b, c.getBindings (GLOBAL_SCOPE));
+        }
+
+        private Var getClojureVar (final String name, final Namespace ns) throws NoSuchMethodException {
             if (name == null)
                 throw new NullPointerException ("name is null");
 
+            ResolvedFn rf = fnCache != null ? fnCache.get (name) : null;
+            if (rf != null && rf.isMapped (ns))
+                return rf.var;
+
             try {
                 Symbol sym = Symbol.intern (name); // Maybe namespaced
                 Var var = sym.getNamespace () != null ? Var.find (sym) : (Var) ns.getMapping (sym);
+                if (var == null)
+                    throw new NullPointerException ("Var is null");
+                if (fnCache != null)
+                    fnCache.put (name, new ResolvedFn (sym, var));
+                return var;
+            } catch (Exception e) {
+                throw (NoSuchMethodException) new NoSuchMethodException (name).initCause (e);
+            }
+        }
+
+        private IFn getClojureFN (final String name, final Namespace ns) throws NoSuchMethodException {
+            Var var = getClojureVar (name, ns);
+            try {
                 IFn fn = (IFn) var.deref ();
                 if (fn == null)
                     throw new NullPointerException ("IFn is null");
@@ -587,25 +2929,15 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
         }
 
         private IFn getClojureFN (final String name) throws NoSuchMethodException {
-            return getClojureFN (name, NS_PER_CONTEXT ? getContextNS (context) : namespace);
+            return getClojureFN (name, NS_PER_CONTEXT ? getContextNS (context ()) : namespace);
         }
 
         private Object callClojureFN (final IFn fn, final Object[] args) throws ScriptException {
-            return callClojureZ (new Callable () {
+            return callClojureZ (Operation.INVOKE_FUNCTION, new Callable<Object> () {
                     @Override
                     public Object call () {
-                        switch (args == null ? 0 : args.length) {
-                        case 0: return fn.invoke ();
-                        case 1: return fn.invoke (args[0]);
-                        case 2: return fn.invoke (args[0], args[1]);
-                        case 3: return fn.invoke (args[0], args[1], args[2]);
-                        case 4: return fn.invoke (args[0], args[1], args[2], args[3]);
-                        case 5: return fn.invoke (args[0], args[1], args[2], args[3], args[4]);
-                        case 6: return fn.invoke (args[0], args[1], args[2], args[3], args[4], args[5]);
-                        case 7: return fn.invoke (args[0], args[1], args[2], args[3], args[4], args[5], args[6]);
-                        default: return fn.applyTo (RT.seq (args));
-                        }
-                    }}, context);
+                        return invokeFn (fn, args);
+                    }}, context ());
         }
 
         private Object callClojureFN (final IFn fn, final Object thiz, final Object[] args) throws ScriptException {
@@ -635,21 +2967,64 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
         //             }}, context);
         // }
 
+        // Function of a reify implementation (getInterface): called with thread bindings of the engine,
+        // ScriptException is thrown as by the Proxy (UndeclaredThrowableException, if the method does not declare it)
+        private final class BoundFn extends RestFn {
+
+            private static final long serialVersionUID = 1L;
+
+            private final IFn fn;
+            private final boolean declared;
+
+            BoundFn (final IFn fn, final Method method) {
+                this.fn = fn;
+                boolean d = false;
+                for (Class<?> e : method.getExceptionTypes ())
+                    d |= e.isAssignableFrom (ScriptException.class);
+                this.declared = d;
+            }
+
+            @Override
+            public int getRequiredArity () {
+                return 0;
+            }
+
+            @Override
+            protected Object doInvoke (final Object args) {
+                try {
+                    return callClojureFN (fn, RT.seqToArray ((ISeq) args));
+                } catch (ScriptException e) {
+                    throw declared ? Util.sneakyThrow (e) : new UndeclaredThrowableException (e);
+                }
+            }
+        }
+
         @SuppressWarnings ("unchecked")
         private <T> T getClojureIF (final Object thiz, final Class<T> clasz) {
             if (clasz == null || ! clasz.isInterface ())
                 throw new IllegalArgumentException ("Class object is null or is not an interface");
 
-            Namespace ns = NS_PER_CONTEXT ? getContextNS (context) : namespace;
+            Namespace ns = NS_PER_CONTEXT ? getContextNS (context ()) : namespace;
+            InterfaceImpl impl = getInterfaceImpl (clasz, thiz != null);
             String csn = clasz.getSimpleName ();
-            final Map<String, IFn> fns = new HashMap<String, IFn> ();
+            final Object[] fs = new Object [impl.methods.length];
             try {
-                for (Method m : clasz.getMethods ()) // looks for "ClassName#methodName" in current ns
-                    fns.put (m.getName (), getClojureFN (csn + "#" + m.getName (), ns));
+                for (int i = 0; i < fs.length; i++) // looks for "ClassName#methodName" in current ns
+                    fs[i] = getClojureFN (csn + "#" + impl.methods[i].getName (), ns);
             } catch (NoSuchMethodException e) {
                 return null;
             }
 
+            if (impl.factory != null) {
+                for (int i = 0; i < fs.length; i++)
+                    fs[i] = new BoundFn ((IFn) fs[i], impl.methods[i]);
+                return (T) impl.factory.invoke (thiz, fs);
+            }
+
+            final Map<String, IFn> fns = new HashMap<String, IFn> ();
+            for (int i = 0; i < fs.length; i++)
+                fns.put (impl.methods[i].getName (), (IFn) fs[i]);
+
             return (T) Proxy.newProxyInstance (ClojureEngineFactory.class.getClassLoader (), new Class[] {clasz}, new InvocationHandler () {
                     public Object invoke (final Object proxy, final Method method, final Object[] args) throws Throwable {
                         String name = method.getName ();
@@ -666,25 +3041,64 @@ public final class ClojureEngineFactory implements ScriptEngineFactory {
                     }});
         }
 
-        private Object callClojureA (final Callable cc) throws ScriptException {
-            return callClojureZ (cc, context);
+        /*
+          Callable for ScriptEngine.eval: Compiler.load of the source, or (with EVAL_CACHE) cached compiled script.
+          Bindings (b) and ScriptContext (c) default to the ones of the engine, as in callClojureA/B/C.
+        */
+        private Callable<?> asEval (final Reader r, final Bindings b, final ScriptContext c) throws ScriptException {
+            return EVAL_CACHE == null && ! DATA_AUTO ? asCompilerLoad (r) : asEval (readSource (r), b, c);
+        }
+
+        private Callable<?> asEval (final String s, final Bindings b, final ScriptContext c) {
+            if (s == null)
+                throw new NullPointerException ("script is null");
+
+            final DataReader.Data d = readLiteral (s);
+            if (d != null)
+                return new Callable<Object> () {
+                    @Override
+                    public Object call () {
+                        return d.value;
+                    }};
+            if (EVAL_CACHE == null)
+                return asCompilerLoad (new StringReader (s));
+
+            return new Callable<Object> () {
+                @Override
+                public Object call () throws ScriptException {
+                    ScriptContext c0 = c != null ? c : context ();
+                    Bindings eb = b != null ? b : c0.getBindings (ENGINE_SCOPE);
+                    Bindings gb = c0.getBindings (GLOBAL_SCOPE);
+                    Namespace ns = (Namespace) RT.CURRENT_NS.deref ();
+                    EvalKey key = new EvalKey (s, nsToken (ns), eb, gb);
+                    ClojureCompiledScript cs = evalCache.get (key);
+                    if (cs == null) {
+                        cs = newCompiledScript (new StringReader (s), NO_PARAMS, ns, false, eb, gb);
+                        evalCache.put (key, cs);
+                    }
+                    return cs.call ();
+                }};
+        }
+
+        private Object callClojureA (final Operation op, final Callable<?> cc) throws ScriptException {
+            return callClojureZ (op, cc, context ());
         }
 
-        private Object callClojureB (final Callable cc, final Bindings b) throws ScriptException {
+        private Object callClojureB (final Operation op, final Callable<?> cc, final Bindings b) throws ScriptException {
             if (b == null)
                 throw new NullPointerException ("bindings is null");
 
-            return callClojureZ (cc, b, context);
+            return callClojureZ (op, cc, b, context ());
         }
 
-        private Object callClojureC (final Callable cc, final ScriptContext c) throws ScriptException {
+        private Object callClojureC (final Operation op, final Callable<?> cc, final ScriptContext c) throws ScriptException {
             if (c == null)
                 throw new NullPointerException ("context is null");
 
             if (NS_PER_CONTEXT && c.getAttribute (NS_KEY, ENGINE_SCOPE) == null)
-                c.setAttribute (NS_KEY, createNamespace (), ENGINE_SCOPE);
+                c.setAttribute (NS_KEY, createNamespace (c), ENGINE_SCOPE);
 
-            return callClojureZ (cc, c);
+            return callClojureZ (op, cc, c);
         }
     }
 }
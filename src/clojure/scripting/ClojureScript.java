@@ -0,0 +1,79 @@
+package clojure.scripting;
+
+import java.util.List;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+
+/*
+  CompiledScript, created by ClojureScriptEngine
+*/
+
+public abstract class ClojureScript extends CompiledScript {
+
+    ClojureScript () {
+    }
+
+    /*
+      Names of parameters, declared at compilation; empty list for scripts compiled via Compilable
+    */
+    public abstract List<String> getParameters ();
+
+    /*
+      Executes script with positional values of parameters.
+      Script function is called directly, without thread bindings of the engine:
+      ScriptContext (writers, Bindings) and Namespace are not bound as *out*, *ns*, etc.
+    */
+    public abstract Object invoke (Object... args) throws ScriptException;
+
+    /*
+      Eval (Bindings, or ENGINE_SCOPE of the engine if null) with captured output (see ClojureScriptEngine.evalCaptured)
+    */
+    public abstract CapturedResult evalCaptured (Bindings b) throws ScriptException;
+
+    /*
+      Asynchronous eval, executed by the executor of the engine (see ClojureScriptEngine.evalAsync)
+    */
+    public abstract Future<Object> evalAsync ();
+
+    public abstract Future<Object> evalAsync (Bindings b);
+
+    /*
+      Evaluates script for each Bindings (as ENGINE_SCOPE), the same way as CompiledScript.eval (Bindings), returns results in order.
+      Thread bindings of the engine (Namespace, writers, GLOBAL_SCOPE) are set up once per batch, values of Bindings
+      with the same names as the previous ones are just assigned to their Vars.
+    */
+    public abstract List<Object> evalAll (Iterable<? extends Bindings> bindings) throws ScriptException;
+
+    /*
+      Parallel evalAll: list of Bindings is split into chunks, each chunk is evaluated by a task of the executor.
+      Waits for all tasks; the first failure is thrown.
+    */
+    public abstract List<Object> evalAll (List<? extends Bindings> bindings, ExecutorService executor) throws ScriptException;
+
+    /*
+      Executes script for rows of parameter values, like invoke: columns[i][row] is a value of i-th parameter,
+      result of each row is put into results[row] (results.length rows are executed).
+    */
+    public abstract void invokeAll (Object[][] columns, Object[] results) throws ScriptException;
+
+    /*
+      Parallel invokeAll: rows are split into chunks, each chunk is executed by a task of the executor.
+    */
+    public abstract void invokeAll (Object[][] columns, Object[] results, ExecutorService executor) throws ScriptException;
+
+    /*
+      Variants of the script function, compiled for classes of bound values (SPECIALIZATIONS), and their reflective call sites
+    */
+    public abstract SpecializationStatistics getSpecializationStatistics ();
+
+    /*
+      Memory, retained by the script: compiled functions (per Namespace, evicted with released Namespaces),
+      their classes, and the parsed form, kept until no recompilation is possible
+    */
+    public abstract RetainedSize getRetainedSize ();
+}
@@ -0,0 +1,159 @@
+package clojure.scripting;
+
+import java.io.Closeable;
+import java.io.Reader;
+
+import java.util.Map;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/*
+  ScriptEngine, created by ClojureEngineFactory: javax.script interfaces plus Clojure specific extensions
+*/
+
+public interface ClojureScriptEngine extends ScriptEngine, Compilable, Invocable, Closeable {
+
+    /*
+      Attribute (Bindings of the call or ScriptContext) with timeout of a call in milliseconds (Number), overrides setTimeout
+    */
+    String TIMEOUT = "javax.script.timeout";
+
+    @Override
+    ClojureScript compile (Reader r) throws ScriptException;
+
+    @Override
+    ClojureScript compile (String s) throws ScriptException;
+
+    /*
+      Compiles script as a function of declared parameters, (fn [p1 p2 ...] script).
+      Parameters are local variables of the script; values are passed positionally (ClojureScript.invoke)
+      or taken from Bindings by parameter name (CompiledScript.eval).
+    */
+    ClojureScript compile (Reader r, String... parameters) throws ScriptException;
+
+    ClojureScript compile (String s, String... parameters) throws ScriptException;
+
+    /*
+      Bulk compile of named scripts (as compile (String)): identical sources are compiled once and share the ClojureScript.
+      Unlike compile, which defers compile errors (names may be bound by the time of eval), a script must compile
+      with the Bindings of the engine now. With an executor, sources are read and compiled by its tasks in parallel
+      (and by the caller), each with thread bindings of its own. A failure does not stop the others, it is reported by name
+      (CompileReport.getFailures).
+    */
+    CompileReport compileAll (Map<String, String> sources) throws ScriptException;
+
+    CompileReport compileAll (Map<String, String> sources, ExecutorService executor) throws ScriptException;
+
+    /*
+      Streaming eval: reads and evaluates one top-level form at a time, as eval (Reader) does (a form may change *ns* for the next ones),
+      and passes the result of each form to the callback. Memory does not depend on the number of forms.
+      A failure is thrown with the line and column of the form, after results of the preceding forms were passed.
+      Returns the number of evaluated forms.
+    */
+    long evalForms (Reader r, FormCallback callback) throws ScriptException;
+
+    long evalForms (Reader r, ScriptContext c, FormCallback callback) throws ScriptException;
+
+    /*
+      Timeout of eval, CompiledScript.eval and invokeFunction of the engine in milliseconds (0: none, TIMEOUT_MILLIS by default):
+      on expiry the thread is interrupted, and the call fails with ScriptTimeoutException.
+      Direct calls (FunctionHandle) are not limited.
+    */
+    void setTimeout (long millis);
+
+    long getTimeout ();
+
+    /*
+      Reads data (EDN: literals, collections, tagged literals of *data-readers*) without the compiler: nothing is evaluated,
+      symbols and lists are returned as read, code reader macros (#=, #(), ') are errors. Returns the last value, as eval.
+      Does not use the ScriptContext, Bindings or the Namespace of the engine.
+    */
+    Object readData (Reader r) throws ScriptException;
+
+    Object readData (String s) throws ScriptException;
+
+    /*
+      Eval with captured output: *out* and *err* are bound to pooled, unsynchronized buffers (not writers of the ScriptContext),
+      returned with the value. flush by the script does nothing, output is available, when the call completes.
+    */
+    CapturedResult evalCaptured (String s) throws ScriptException;
+
+    CapturedResult evalCaptured (String s, Bindings b) throws ScriptException;
+
+    /*
+      Last CAPTURE_RING_SIZE chars of output, captured by evalCaptured of the engine and its scripts; null if the ring is disabled
+    */
+    String getRecentOutput ();
+
+    /*
+      Asynchronous eval and invokeFunction: executed by the executor of the engine, with bounded concurrency
+      (ASYNC_CONCURRENCY) and number of waiting tasks (ASYNC_QUEUE_SIZE, RejectedExecutionException when exceeded).
+      Thread bindings of the caller are conveyed to the task.
+    */
+    Future<Object> evalAsync (String s);
+
+    Future<Object> evalAsync (String s, Bindings b);
+
+    Future<Object> evalAsync (String s, ScriptContext c);
+
+    Future<Object> invokeFunctionAsync (String name, Object... args);
+
+    /*
+      Executor for asynchronous calls of the engine and its scripts; null restores the default, shared by engines
+    */
+    void setExecutor (ExecutorService executor);
+
+    /*
+      Resolves function in the current Namespace once, for repeated calls (see FunctionHandle)
+    */
+    FunctionHandle getFunction (String name) throws NoSuchMethodException;
+
+    /*
+      Calls function with primitive arguments and result, with thread bindings of the engine (as invokeFunction).
+      Functions with primitive type hints (^long/^double, up to 4 arguments) are called without boxing, other ones with boxed arguments.
+      Each call allocates the binding frame; the allocation-free path is FunctionHandle.invokeLong/invokeDouble.
+    */
+    long invokeLong (String name) throws ScriptException, NoSuchMethodException;
+
+    long invokeLong (String name, long a1) throws ScriptException, NoSuchMethodException;
+
+    long invokeLong (String name, long a1, long a2) throws ScriptException, NoSuchMethodException;
+
+    long invokeLong (String name, long a1, long a2, long a3) throws ScriptException, NoSuchMethodException;
+
+    long invokeLong (String name, long a1, long a2, long a3, long a4) throws ScriptException, NoSuchMethodException;
+
+    double invokeDouble (String name) throws ScriptException, NoSuchMethodException;
+
+    double invokeDouble (String name, double a1) throws ScriptException, NoSuchMethodException;
+
+    double invokeDouble (String name, double a1, double a2) throws ScriptException, NoSuchMethodException;
+
+    double invokeDouble (String name, double a1, double a2, double a3) throws ScriptException, NoSuchMethodException;
+
+    double invokeDouble (String name, double a1, double a2, double a3, double a4) throws ScriptException, NoSuchMethodException;
+
+    /*
+      Counters of the function lookup cache (FN_CACHE_SIZE) of the engine, null if the cache is disabled
+    */
+    CacheStatistics getFunctionCacheStatistics ();
+
+    /*
+      Releases Namespace(s) of the engine (not a shared one); engine can not be used after that
+    */
+    @Override
+    void close ();
+
+    /*
+      Releases Namespace, created for the ScriptContext (NS_PER_CONTEXT), if any
+    */
+    void dispose (ScriptContext c);
+}
@@ -0,0 +1,298 @@
+package clojure.scripting;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import clojure.lang.APersistentMap;
+import clojure.lang.APersistentVector;
+import clojure.lang.IDeref;
+import clojure.lang.IFn;
+import clojure.lang.IMapEntry;
+import clojure.lang.IPersistentCollection;
+import clojure.lang.IPersistentMap;
+import clojure.lang.IPersistentStack;
+import clojure.lang.IPersistentVector;
+import clojure.lang.IReduce;
+import clojure.lang.ISeq;
+import clojure.lang.IteratorSeq;
+import clojure.lang.MapEntry;
+import clojure.lang.PersistentHashMap;
+import clojure.lang.PersistentVector;
+import clojure.lang.RT;
+import clojure.lang.Util;
+
+/*
+  Read-only Clojure views of Java collections, without copying: a RandomAccess List or a long/double/int array is seen
+  as a vector (nth, count, reduce, invoke by index), a Map as a map (get, invoke by key, seq of entries).
+  Elements are not converted (views are shallow). "Updates" (conj, assoc, dissoc, pop) return a persistent copy,
+  the Java collection is never changed; it must not be changed by Java code, while a script uses the view.
+
+  Results of scripts need no views: persistent vectors, maps, sets and seqs implement java.util.List/Map/Set (read only),
+  and lazy seqs are realized by the List methods on demand.
+*/
+
+public final class CollectionViews {
+
+    private CollectionViews () {}
+
+    // View of a List (RandomAccess), Map, long[], double[] or int[]; other objects (and Clojure collections) as is
+    public static Object of (final Object o) {
+        if (o == null || o instanceof IPersistentCollection)
+            return o;
+        if (o instanceof List && o instanceof RandomAccess)
+            return new ListView ((List<?>) o);
+        if (o instanceof Map)
+            return new MapView ((Map<?, ?>) o);
+        if (o instanceof long[])
+            return new LongArrayView ((long[]) o);
+        if (o instanceof double[])
+            return new DoubleArrayView ((double[]) o);
+        if (o instanceof int[])
+            return new IntArrayView ((int[]) o);
+        return o;
+    }
+
+    // Vector by nth and count of a subclass; reduce is a plain loop, without a seq
+    private abstract static class VectorView extends APersistentVector implements IReduce {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object nth (final int i, final Object notFound) {
+            return i >= 0 && i < count () ? nth (i) : notFound;
+        }
+
+        @Override
+        public IPersistentVector cons (final Object o) {
+            return copy ().cons (o);
+        }
+
+        @Override
+        public IPersistentVector assocN (final int i, final Object o) {
+            return copy ().assocN (i, o);
+        }
+
+        @Override
+        public IPersistentStack pop () {
+            return copy ().pop ();
+        }
+
+        @Override
+        public IPersistentCollection empty () {
+            return PersistentVector.EMPTY;
+        }
+
+        @Override
+        public Object reduce (final IFn f) {
+            int n = count ();
+            if (n == 0)
+                return f.invoke ();
+            Object r = nth (0);
+            for (int i = 1; i < n; i++)
+                if (RT.isReduced (r = f.invoke (r, nth (i))))
+                    return ((IDeref) r).deref ();
+            return r;
+        }
+
+        @Override
+        public Object reduce (final IFn f, final Object start) {
+            Object r = start;
+            for (int i = 0, n = count (); i < n; i++)
+                if (RT.isReduced (r = f.invoke (r, nth (i))))
+                    return ((IDeref) r).deref ();
+            return r;
+        }
+
+        private PersistentVector copy () {
+            return PersistentVector.create ((List) this);
+        }
+    }
+
+    private static final class ListView extends VectorView {
+
+        private static final long serialVersionUID = 1L;
+        private final List<?> list;
+
+        ListView (final List<?> list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object nth (final int i) {
+            return list.get (i);
+        }
+
+        @Override
+        public int count () {
+            return list.size ();
+        }
+    }
+
+    private static final class LongArrayView extends VectorView {
+
+        private static final long serialVersionUID = 1L;
+        private final long[] a;
+
+        LongArrayView (final long[] a) {
+            this.a = a;
+        }
+
+        @Override
+        public Object nth (final int i) {
+            return a[i];
+        }
+
+        @Override
+        public int count () {
+            return a.length;
+        }
+    }
+
+    private static final class DoubleArrayView extends VectorView {
+
+        private static final long serialVersionUID = 1L;
+        private final double[] a;
+
+        DoubleArrayView (final double[] a) {
+            this.a = a;
+        }
+
+        @Override
+        public Object nth (final int i) {
+            return a[i];
+        }
+
+        @Override
+        public int count () {
+            return a.length;
+        }
+    }
+
+    private static final class IntArrayView extends VectorView {
+
+        private static final long serialVersionUID = 1L;
+        private final int[] a;
+
+        IntArrayView (final int[] a) {
+            this.a = a;
+        }
+
+        @Override
+        public Object nth (final int i) {
+            return a[i];
+        }
+
+        @Override
+        public int count () {
+            return a.length;
+        }
+    }
+
+    private static final class MapView extends APersistentMap {
+
+        private static final long serialVersionUID = 1L;
+        private final Map<?, ?> map;
+
+        MapView (final Map<?, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public boolean containsKey (final Object k) {
+            return map.containsKey (k) || equivEntry (k) != null;
+        }
+
+        @Override
+        public IMapEntry entryAt (final Object k) {
+            Object v = map.get (k);
+            if (v != null || map.containsKey (k))
+                return new MapEntry (k, v);
+            Map.Entry<?, ?> e = equivEntry (k);
+            return e != null ? new MapEntry (e.getKey (), e.getValue ()) : null;
+        }
+
+        @Override
+        public Object valAt (final Object k) {
+            return valAt (k, null);
+        }
+
+        @Override
+        public Object valAt (final Object k, final Object notFound) {
+            Object v = map.get (k);
+            if (v != null || map.containsKey (k))
+                return v;
+            Map.Entry<?, ?> e = equivEntry (k);
+            return e != null ? e.getValue () : notFound;
+        }
+
+        /*
+          Keys of a Java Map are compared by equals, keys of Clojure maps by Util.equiv (Long 1 is Integer 1):
+          a number, which is not found by equals, is looked up by a scan (a missing number costs one).
+        */
+        private Map.Entry<?, ?> equivEntry (final Object k) {
+            if (k instanceof Number)
+                for (Map.Entry<?, ?> e : map.entrySet ())
+                    if (e.getKey () instanceof Number && Util.equiv (k, e.getKey ()))
+                        return e;
+            return null;
+        }
+
+        @Override
+        public int count () {
+            return map.size ();
+        }
+
+        @Override
+        public ISeq seq () {
+            return map.isEmpty () ? null : IteratorSeq.create (iterator ());
+        }
+
+        @Override
+        public Iterator<Object> iterator () {
+            final Iterator<? extends Map.Entry<?, ?>> i = map.entrySet ().iterator ();
+            return new Iterator<Object> () {
+                @Override
+                public boolean hasNext () {
+                    return i.hasNext ();
+                }
+
+                @Override
+                public Object next () {
+                    Map.Entry<?, ?> e = i.next ();
+                    return new MapEntry (e.getKey (), e.getValue ());
+                }
+
+                @Override
+                public void remove () {
+                    throw new UnsupportedOperationException ();
+                }
+            };
+        }
+
+        @Override
+        public IPersistentMap assoc (final Object k, final Object v) {
+            return copy ().assoc (k, v);
+        }
+
+        @Override
+        public IPersistentMap assocEx (final Object k, final Object v) {
+            return copy ().assocEx (k, v);
+        }
+
+        @Override
+        public IPersistentMap without (final Object k) {
+            return copy ().without (k);
+        }
+
+        @Override
+        public IPersistentCollection empty () {
+            return PersistentHashMap.EMPTY;
+        }
+
+        private IPersistentMap copy () {
+            return PersistentHashMap.create (map);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package clojure.scripting;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.script.ScriptException;
+
+/*
+  Result of ClojureScriptEngine.compileAll: compiled scripts and failures by name, in order of the sources
+*/
+
+public final class CompileReport {
+
+    private final Map<String, ClojureScript> scripts;
+    private final Map<String, ScriptException> failures;
+    private final int sources;
+    private final long nanos;
+
+    CompileReport (final Map<String, ClojureScript> scripts, final Map<String, ScriptException> failures, final int sources, final long nanos) {
+        this.scripts = Collections.unmodifiableMap (scripts);
+        this.failures = Collections.unmodifiableMap (failures);
+        this.sources = sources;
+        this.nanos = nanos;
+    }
+
+    // Names with identical sources share a ClojureScript
+    public Map<String, ClojureScript> getScripts () {
+        return scripts;
+    }
+
+    // Failures with line and column numbers of the error in the source (-1 if not known)
+    public Map<String, ScriptException> getFailures () {
+        return failures;
+    }
+
+    // Distinct sources, compiled once each
+    public int getSourceCount () {
+        return sources;
+    }
+
+    public double getMillis () {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public String toString () {
+        return new StringBuilder ("CompileReport{scripts=").append (scripts.size ())
+            .append (", sources=").append (sources)
+            .append (", failures=").append (failures.keySet ())
+            .append (", time=").append (getMillis ()).append (" ms}").toString ();
+    }
+}
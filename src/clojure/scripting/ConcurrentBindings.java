@@ -0,0 +1,152 @@
+package clojure.scripting;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.Bindings;
+
+/*
+  Bindings, which may be shared by threads (GLOBAL_SCOPE of engines, used concurrently): lock free reads and updates
+  of ConcurrentHashMap, but null values are allowed, as by SimpleBindings (stored as a mask).
+  Iterators are weakly consistent, they never throw ConcurrentModificationException.
+*/
+
+public final class ConcurrentBindings extends AbstractMap<String, Object> implements Bindings {
+
+    private static final Object NULL = new Object ();
+
+    private final ConcurrentHashMap<String, Object> map;
+    private final Set<Map.Entry<String, Object>> entries = new EntrySet ();
+
+    public ConcurrentBindings () {
+        map = new ConcurrentHashMap<String, Object> ();
+    }
+
+    public ConcurrentBindings (final Map<String, Object> m) {
+        map = new ConcurrentHashMap<String, Object> (Math.max (16, m.size () * 2));
+        putAll (m);
+    }
+
+    @Override
+    public Object put (final String k, final Object v) {
+        return unmask (map.put (checkKey (k), mask (v)));
+    }
+
+    @Override
+    public void putAll (final Map<? extends String, ? extends Object> m) {
+        for (Map.Entry<? extends String, ? extends Object> e : m.entrySet ())
+            put (e.getKey (), e.getValue ());
+    }
+
+    @Override
+    public Object get (final Object k) {
+        return unmask (map.get (checkKey (k)));
+    }
+
+    @Override
+    public boolean containsKey (final Object k) {
+        return map.containsKey (checkKey (k));
+    }
+
+    @Override
+    public boolean containsValue (final Object v) {
+        return map.containsValue (mask (v));
+    }
+
+    @Override
+    public Object remove (final Object k) {
+        return unmask (map.remove (checkKey (k)));
+    }
+
+    @Override
+    public int size () {
+        return map.size ();
+    }
+
+    @Override
+    public boolean isEmpty () {
+        return map.isEmpty ();
+    }
+
+    @Override
+    public void clear () {
+        map.clear ();
+    }
+
+    @Override
+    public Set<String> keySet () {
+        return map.keySet ();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet () {
+        return entries;
+    }
+
+    private static Object mask (final Object v) {
+        return v == null ? NULL : v;
+    }
+
+    private static Object unmask (final Object v) {
+        return v == NULL ? null : v;
+    }
+
+    // As SimpleBindings: keys are non-empty Strings
+    private static String checkKey (final Object k) {
+        if (k == null)
+            throw new NullPointerException ("key can not be null");
+        if (! (k instanceof String))
+            throw new ClassCastException ("key should be a String");
+        if (((String) k).length () == 0)
+            throw new IllegalArgumentException ("key can not be empty");
+        return (String) k;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator () {
+            final Iterator<Map.Entry<String, Object>> i = map.entrySet ().iterator ();
+            return new Iterator<Map.Entry<String, Object>> () {
+                @Override
+                public boolean hasNext () {
+                    return i.hasNext ();
+                }
+
+                @Override
+                public Map.Entry<String, Object> next () {
+                    final Map.Entry<String, Object> e = i.next ();
+                    return new AbstractMap.SimpleEntry<String, Object> (e.getKey (), unmask (e.getValue ())) {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        public Object setValue (final Object v) {
+                            super.setValue (v);
+                            return unmask (map.put (getKey (), mask (v)));
+                        }
+                    };
+                }
+
+                @Override
+                public void remove () {
+                    i.remove ();
+                }
+            };
+        }
+
+        @Override
+        public int size () {
+            return map.size ();
+        }
+
+        @Override
+        public void clear () {
+            map.clear ();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package clojure.scripting;
+
+import java.io.StringReader;
+
+import java.util.Map;
+
+import javax.script.ScriptException;
+
+import clojure.lang.EdnReader;
+import clojure.lang.IMeta;
+import clojure.lang.IPersistentList;
+import clojure.lang.IPersistentMap;
+import clojure.lang.IPersistentSet;
+import clojure.lang.IPersistentVector;
+import clojure.lang.ISeq;
+import clojure.lang.Keyword;
+import clojure.lang.LineNumberingPushbackReader;
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+
+/*
+  Data mode: sources are read by the EDN reader (clojure.edn), with tagged literals of *data-readers* and default-data-readers,
+  and returned as read, without the compiler. EDN has no code reader macros (#=, #(), ', `, @), so nothing is evaluated.
+  A value is literal, when the compiler would evaluate it to itself: no symbols or lists, in collections and metadata too.
+*/
+
+final class DataReader {
+
+    private static final Keyword EOF = Keyword.intern (null, "eof");
+    private static final Keyword READERS = Keyword.intern (null, "readers");
+    private static final Keyword DEFAULT = Keyword.intern (null, "default");
+    private static final Object END = new Object ();
+
+    static final class Data {
+
+        final Object value;
+        final boolean literal;
+
+        Data (final Object value, final boolean literal) {
+            this.value = value;
+            this.literal = literal;
+        }
+    }
+
+    private DataReader () {
+    }
+
+    // Reads all forms with the reader configuration (*data-readers*, *default-data-reader-fn*); the value is the last one
+    // (null for none), as of eval
+    static Data read (final String s, final Object readers, final Object defaultFn) throws ScriptException {
+        LineNumberingPushbackReader r = new LineNumberingPushbackReader (new StringReader (s));
+        IPersistentMap opts = RT.mapUniqueKeys (EOF, END, READERS, readers, DEFAULT, defaultFn);
+        Object value = null;
+        boolean literal = true;
+        try {
+            for (Object o; (o = EdnReader.read (r, opts)) != END;) {
+                value = o;
+                literal = literal && isLiteral (o);
+            }
+        } catch (RuntimeException e) {
+            Throwable t = e.getCause () != null ? e.getCause () : e;
+            throw (ScriptException) new ScriptException (String.valueOf (t.getMessage ()), null, r.getLineNumber (), r.getColumnNumber ())
+                .initCause (e);
+        }
+        return new Data (value, literal);
+    }
+
+    /*
+      Likely a literal, worth reading before the compiler: the first token, past opening brackets of vectors, maps and sets,
+      is a number, string, character, keyword, nil/true/false, a tagged literal (#inst, ##Inf, #:ns{}) or a closing bracket.
+      A symbol (x, *ns*), a list (a call, the common case of code) or a code reader macro (', `, @, ~, ^, #(), #', #"") is not.
+    */
+    static boolean maybeLiteral (final String s) {
+        int n = s.length ();
+        int i = 0;
+        for (;; i++) {
+            while (i < n && (Character.isWhitespace (s.charAt (i)) || s.charAt (i) == ','))
+                i++;
+            if (i == n)
+                return false;
+            if (s.charAt (i) == '#' && i + 1 < n && s.charAt (i + 1) == '{')
+                i++;
+            else if (s.charAt (i) != '[' && s.charAt (i) != '{')
+                break;
+        }
+
+        char c = s.charAt (i);
+        char next = i + 1 < n ? s.charAt (i + 1) : ' ';
+        switch (c) {
+        case '"': case ':': case '\\': case ']': case '}':
+            return true;
+        case '+': case '-':
+            return Character.isDigit (next);
+        case '#':
+            return Character.isLetter (next) || next == '#' || next == ':';
+        default:
+            return Character.isDigit (c) || isWord (s, i, "nil") || isWord (s, i, "true") || isWord (s, i, "false");
+        }
+    }
+
+    // The token at i is the word
+    private static boolean isWord (final String s, final int i, final String word) {
+        int end = i + word.length ();
+        if (! s.startsWith (word, i))
+            return false;
+        if (end == s.length ())
+            return true;
+        char c = s.charAt (end);
+        return Character.isWhitespace (c) || ",;()[]{}\"".indexOf (c) >= 0;
+    }
+
+    static boolean isLiteral (final Object o) {
+        if (o instanceof Symbol || o instanceof ISeq || o instanceof IPersistentList)
+            return false;
+        if (o instanceof IMeta && ((IMeta) o).meta () != null && ! isLiteral (((IMeta) o).meta ()))
+            return false;
+        if (o instanceof IPersistentMap) {
+            for (Object e : (Iterable) o)
+                if (! isLiteral (((Map.Entry) e).getKey ()) || ! isLiteral (((Map.Entry) e).getValue ()))
+                    return false;
+        } else if (o instanceof IPersistentVector || o instanceof IPersistentSet)
+            for (Object e : (Iterable) o)
+                if (! isLiteral (e))
+                    return false;
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+package clojure.scripting;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Time and checkpoint budgets of a call of an engine, kept per thread while the call runs.
+  When time expires, a watchdog thread interrupts the calling thread (blocking operations throw), and checkpoints throw:
+  they are compiled into loops and functions with CHECKPOINTS (see Checkpoints), for scripts, which do not block.
+  Checkpoints count against the checkpoint budget too. Nested calls have own deadlines, checkpoints observe the enclosing ones.
+*/
+
+public final class Deadline implements Runnable {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline> ();
+
+    private static final class WatchdogHolder { // created on first use
+        private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog ();
+    }
+
+    private static volatile ScheduledThreadPoolExecutor created; // WATCHDOG, once created
+
+    private static final int RUNNING = 0, TIMED_OUT = 1, EXHAUSTED = 2;
+
+    private final Deadline parent;
+    private final Thread thread;
+    private final long timeout; // milliseconds, 0: none
+    private final long budget; // checkpoints, 0: unlimited
+    private final long start;
+    private final Future<?> alarm;
+    private long checkpoints; // by the calling thread only
+    private volatile int state;
+    private boolean finished; // guarded by this
+
+    private Deadline (final Deadline parent, final long timeout, final long budget) {
+        this.parent = parent;
+        this.thread = Thread.currentThread ();
+        this.timeout = timeout;
+        this.budget = budget;
+        this.start = System.nanoTime ();
+        this.alarm = timeout > 0 ? WatchdogHolder.WATCHDOG.schedule (this, timeout, TimeUnit.MILLISECONDS) : null;
+    }
+
+    /*
+      Called by instrumented scripts: throws, if a deadline of the current thread expired
+    */
+    public static void checkpoint () throws ScriptTimeoutException {
+        Deadline d = CURRENT.get ();
+        if (d == null)
+            return;
+
+        if (d.budget > 0 && ++d.checkpoints > d.budget && d.state == RUNNING)
+            d.state = EXHAUSTED;
+        for (; d != null; d = d.parent)
+            if (d.state != RUNNING)
+                throw d.timeout (null);
+    }
+
+    static Deadline start (final long timeout, final long budget) {
+        Deadline d = new Deadline (CURRENT.get (), timeout, budget);
+        CURRENT.set (d);
+        return d;
+    }
+
+    // Must be called in finally by the calling thread; clears the interrupt of the watchdog
+    void finish () {
+        if (alarm != null)
+            alarm.cancel (false);
+        synchronized (this) {
+            finished = true;
+            if (state == TIMED_OUT)
+                Thread.interrupted ();
+        }
+        CURRENT.set (parent);
+    }
+
+    boolean isExpired () {
+        return state != RUNNING;
+    }
+
+    ScriptTimeoutException timeout (final Throwable cause) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis (System.nanoTime () - start);
+        ScriptTimeoutException e = state == TIMED_OUT
+            ? new ScriptTimeoutException ("Script timed out after " + elapsed + " ms (timeout " + timeout + " ms)", timeout, elapsed)
+            : new ScriptTimeoutException ("Script exceeded checkpoint budget of " + budget + " after " + elapsed + " ms", 0, elapsed);
+        if (cause != null)
+            e.initCause (cause);
+        return e;
+    }
+
+    @Override
+    public synchronized void run () { // by the watchdog
+        if (! finished && state == RUNNING) {
+            state = TIMED_OUT;
+            thread.interrupt ();
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createWatchdog () {
+        ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor (1, new ThreadFactory () {
+                @Override
+                public Thread newThread (final Runnable r) {
+                    Thread t = new Thread (r, Deadline.class.getPackage ().getName () + ".watchdog");
+                    t.setDaemon (true);
+                    return t;
+                }});
+        try { // JDK 7+: cancelled alarms are removed from the queue at once
+            watchdog.getClass ().getMethod ("setRemoveOnCancelPolicy", boolean.class).invoke (watchdog, true);
+        } catch (Exception e) {}
+        return created = watchdog;
+    }
+
+    // Stops the watchdog thread, if any (discard of a runtime): timeouts are not observed after it
+    static void shutdownWatchdog () {
+        ScheduledThreadPoolExecutor watchdog = created;
+        if (watchdog != null)
+            watchdog.shutdownNow ();
+    }
+}
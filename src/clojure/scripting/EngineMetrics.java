@@ -0,0 +1,208 @@
+package clojure.scripting;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+  Built-in ScriptListener, which keeps counters and latency histograms for EngineMetricsMXBean.
+  Updates are lock free (atomic counters); histograms have power of 2 buckets of nanoseconds.
+*/
+
+final class EngineMetrics implements ScriptListener, EngineMetricsMXBean {
+
+    private final ClojureEngineFactory factory;
+
+    private final AtomicLong compiles = new AtomicLong ();
+    private final AtomicLong compileFailures = new AtomicLong ();
+    private final AtomicLong compileNanos = new AtomicLong ();
+    private final AtomicLong failures = new AtomicLong ();
+    private final AtomicLong frames = new AtomicLong ();
+    private final AtomicLong frameVars = new AtomicLong ();
+    private final AtomicLong frameMax = new AtomicLong ();
+    private final Map<Operation, Histogram> latencies = new EnumMap<Operation, Histogram> (Operation.class);
+
+    EngineMetrics (final ClojureEngineFactory factory) {
+        this.factory = factory;
+        for (Operation op : Operation.values ())
+            latencies.put (op, new Histogram ());
+    }
+
+    /*
+      ScriptListener
+    */
+
+    @Override
+    public void compiled (final long nanos, final boolean failed) {
+        compiles.incrementAndGet ();
+        compileNanos.addAndGet (nanos);
+        if (failed)
+            compileFailures.incrementAndGet ();
+    }
+
+    @Override
+    public void called (final Operation operation, final long nanos, final boolean failed) {
+        latencies.get (operation).add (nanos);
+        if (failed)
+            failures.incrementAndGet ();
+    }
+
+    @Override
+    public void bound (final int size) {
+        frames.incrementAndGet ();
+        frameVars.addAndGet (size);
+        for (long max = frameMax.get (); size > max && ! frameMax.compareAndSet (max, size); max = frameMax.get ());
+    }
+
+    /*
+      EngineMetricsMXBean
+    */
+
+    @Override
+    public long getCompileCount () {
+        return compiles.get ();
+    }
+
+    @Override
+    public long getCompileFailureCount () {
+        return compileFailures.get ();
+    }
+
+    @Override
+    public double getCompileTimeMeanMillis () {
+        long n = compiles.get ();
+        return n == 0 ? 0.0 : compileNanos.get () / 1e6 / n;
+    }
+
+    @Override
+    public long getCallCount () {
+        long n = 0;
+        for (Histogram h : latencies.values ())
+            n += h.count ();
+        return n;
+    }
+
+    @Override
+    public long getFailureCount () {
+        return failures.get ();
+    }
+
+    @Override
+    public double getFailureRate () {
+        long n = getCallCount ();
+        return n == 0 ? 0.0 : (double) failures.get () / n;
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts () {
+        Map<String, Long> counts = new LinkedHashMap<String, Long> ();
+        for (Map.Entry<Operation, Histogram> e : latencies.entrySet ())
+            counts.put (e.getKey ().name (), e.getValue ().count ());
+        return counts;
+    }
+
+    @Override
+    public double getLatencyPercentileMicros (final String operation, final double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException ("percentile must be in 0..100: " + percentile);
+        return latencies.get (Operation.valueOf (operation)).percentile (percentile) / 1e3;
+    }
+
+    @Override
+    public double getBindingFrameSizeMean () {
+        long n = frames.get ();
+        return n == 0 ? 0.0 : (double) frameVars.get () / n;
+    }
+
+    @Override
+    public long getBindingFrameSizeMax () {
+        return frameMax.get ();
+    }
+
+    @Override
+    public int getNamespaceCount () {
+        return factory.getNamespaceCount ();
+    }
+
+    @Override
+    public int getPooledNamespaceCount () {
+        return factory.getPooledNamespaceCount ();
+    }
+
+    @Override
+    public int getCompiledClassCount () {
+        return ClassCache.loadedClassCount ();
+    }
+
+    @Override
+    public long getClassLoaderCount () {
+        return factory.getClassLoaderCount ();
+    }
+
+    @Override
+    public long getDefinedClassCount () {
+        return factory.getDefinedClassCount ();
+    }
+
+    @Override
+    public long getUnloadedClassCount () {
+        return factory.getUnloadedClassCount ();
+    }
+
+    @Override
+    public double getEvalCacheHitRatio () {
+        CacheStatistics s = factory.getEvalCacheStatistics ();
+        return s != null ? s.getHitRatio () : 0.0;
+    }
+
+    @Override
+    public void reset () {
+        compiles.set (0);
+        compileFailures.set (0);
+        compileNanos.set (0);
+        failures.set (0);
+        frames.set (0);
+        frameVars.set (0);
+        frameMax.set (0);
+        for (Histogram h : latencies.values ())
+            h.reset ();
+    }
+
+    // Bucket i counts values in [2^i, 2^(i+1)) nanoseconds
+    private static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray (64);
+
+        void add (final long nanos) {
+            buckets.incrementAndGet (nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros (nanos));
+        }
+
+        long count () {
+            long n = 0;
+            for (int i = 0; i < buckets.length (); i++)
+                n += buckets.get (i);
+            return n;
+        }
+
+        // Upper bound of the bucket with the percentile, in nanoseconds
+        double percentile (final double percentile) {
+            long n = count ();
+            if (n == 0)
+                return 0.0;
+
+            long rank = (long) Math.ceil (n * percentile / 100), seen = 0;
+            for (int i = 0; i < buckets.length (); i++)
+                if ((seen += buckets.get (i)) >= Math.max (1, rank))
+                    return Math.pow (2, i + 1);
+            return Math.pow (2, buckets.length ());
+        }
+
+        void reset () {
+            for (int i = 0; i < buckets.length (); i++)
+                buckets.set (i, 0);
+        }
+    }
+}
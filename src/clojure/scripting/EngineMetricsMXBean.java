@@ -0,0 +1,46 @@
+package clojure.scripting;
+
+import java.util.Map;
+
+/*
+  Metrics of engines, registered as MXBean "clojure.scripting:type=EngineMetrics", if METRICS is enabled
+*/
+
+public interface EngineMetricsMXBean {
+
+    long getCompileCount ();
+
+    long getCompileFailureCount ();
+
+    double getCompileTimeMeanMillis ();
+
+    long getCallCount ();
+
+    long getFailureCount ();
+
+    double getFailureRate ();
+
+    Map<String, Long> getCallCounts (); // by ScriptListener.Operation
+
+    double getLatencyPercentileMicros (String operation, double percentile); // approximated by power of 2 buckets
+
+    double getBindingFrameSizeMean ();
+
+    long getBindingFrameSizeMax ();
+
+    int getNamespaceCount ();
+
+    int getPooledNamespaceCount ();
+
+    int getCompiledClassCount (); // classes of Clojure's DynamicClassLoader cache, -1 if unknown
+
+    long getClassLoaderCount (); // class loaders of compiled scripts (LOADER_POLICY), created
+
+    long getDefinedClassCount (); // classes, defined by them
+
+    long getUnloadedClassCount (); // classes of collected class loaders
+
+    double getEvalCacheHitRatio ();
+
+    void reset ();
+}
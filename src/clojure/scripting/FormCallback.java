@@ -0,0 +1,14 @@
+package clojure.scripting;
+
+/*
+  Receiver of results of streaming eval (ClojureScriptEngine.evalForms), called on the evaluating thread
+  after each top-level form, so the next form is not read until the callback returns.
+*/
+
+public interface FormCallback {
+
+    /*
+      Result of the form, which starts at the line and column (1-based); false stops evaluation
+    */
+    boolean evaluated (Object result, int line, int column) throws Exception;
+}
@@ -0,0 +1,65 @@
+package clojure.scripting;
+
+import javax.script.ScriptException;
+
+/*
+  Function of the engine, resolved once (ClojureScriptEngine.getFunction) and tied to its Var,
+  so redefinitions of the function are seen by subsequent calls.
+*/
+
+public abstract class FunctionHandle {
+
+    FunctionHandle () {
+    }
+
+    /*
+      Name of the function, as passed to ClojureScriptEngine.getFunction
+    */
+    public abstract String getName ();
+
+    /*
+      Call function directly, without thread bindings of the engine:
+      ScriptContext (writers, Bindings) and Namespace are not bound as *out*, *ns*, etc.
+      Fixed arity methods do not allocate.
+    */
+    public abstract Object invoke () throws ScriptException;
+
+    public abstract Object invoke (Object a1) throws ScriptException;
+
+    public abstract Object invoke (Object a1, Object a2) throws ScriptException;
+
+    public abstract Object invoke (Object a1, Object a2, Object a3) throws ScriptException;
+
+    public abstract Object invoke (Object a1, Object a2, Object a3, Object a4) throws ScriptException;
+
+    public abstract Object invokeWithArguments (Object... args) throws ScriptException;
+
+    /*
+      Call function with primitive arguments and result, directly (see ClojureScriptEngine.invokeLong),
+      without allocation for functions with primitive type hints
+    */
+    public abstract long invokeLong () throws ScriptException;
+
+    public abstract long invokeLong (long a1) throws ScriptException;
+
+    public abstract long invokeLong (long a1, long a2) throws ScriptException;
+
+    public abstract long invokeLong (long a1, long a2, long a3) throws ScriptException;
+
+    public abstract long invokeLong (long a1, long a2, long a3, long a4) throws ScriptException;
+
+    public abstract double invokeDouble () throws ScriptException;
+
+    public abstract double invokeDouble (double a1) throws ScriptException;
+
+    public abstract double invokeDouble (double a1, double a2) throws ScriptException;
+
+    public abstract double invokeDouble (double a1, double a2, double a3) throws ScriptException;
+
+    public abstract double invokeDouble (double a1, double a2, double a3, double a4) throws ScriptException;
+
+    /*
+      Call function with thread bindings of the engine, the same way as Invocable.invokeFunction
+    */
+    public abstract Object invokeFunction (Object... args) throws ScriptException;
+}
@@ -0,0 +1,98 @@
+package clojure.scripting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Bounded, least-recently-used cache with hit/miss/eviction counters.
+  All operations are synchronized, the critical sections are short (no compilation inside).
+  Caches of the same kind (eval caches of engines) may also count into shared Totals.
+*/
+
+final class LRUCache<K, V> {
+
+    private final int capacity;
+    private final AtomicLong hits = new AtomicLong ();
+    private final AtomicLong misses = new AtomicLong ();
+    private final AtomicLong evictions = new AtomicLong ();
+
+    private final Totals totals;
+
+    private final Map<K, V> map;
+
+    /*
+      Counters of caches with the same capacity, size is the number of entries in all of them (until they are cleared)
+    */
+    static final class Totals {
+
+        private final int capacity;
+        private final AtomicLong hits = new AtomicLong ();
+        private final AtomicLong misses = new AtomicLong ();
+        private final AtomicLong evictions = new AtomicLong ();
+        private final AtomicInteger size = new AtomicInteger ();
+
+        Totals (final int capacity) {
+            this.capacity = capacity;
+        }
+
+        CacheStatistics getStatistics () {
+            return new CacheStatistics (hits.get (), misses.get (), evictions.get (), size.get (), capacity);
+        }
+    }
+
+    LRUCache (final int capacity) {
+        this (capacity, null);
+    }
+
+    LRUCache (final int capacity, final Totals totals) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException ("capacity must be positive: " + capacity);
+
+        this.capacity = capacity;
+        this.totals = totals;
+        this.map = new LinkedHashMap<K, V> (16, 0.75f, true) { // access order
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry (final Map.Entry<K, V> eldest) {
+                    if (size () <= LRUCache.this.capacity)
+                        return false;
+                    evictions.incrementAndGet ();
+                    if (totals != null) {
+                        totals.evictions.incrementAndGet ();
+                        totals.size.decrementAndGet ();
+                    }
+                    return true;
+                }};
+    }
+
+    synchronized V get (final K k) {
+        V v = map.get (k);
+        (v != null ? hits : misses).incrementAndGet ();
+        if (totals != null)
+            (v != null ? totals.hits : totals.misses).incrementAndGet ();
+        return v;
+    }
+
+    synchronized void put (final K k, final V v) {
+        if (map.put (k, v) == null && totals != null)
+            totals.size.incrementAndGet ();
+    }
+
+    synchronized void clear () {
+        if (totals != null)
+            totals.size.addAndGet (- map.size ());
+        map.clear ();
+    }
+
+    CacheStatistics getStatistics () {
+        int size;
+        synchronized (this) {
+            size = map.size ();
+        }
+        return new CacheStatistics (hits.get (), misses.get (), evictions.get (), size, capacity);
+    }
+}
@@ -0,0 +1,44 @@
+package clojure.scripting;
+
+/*
+  Bounded ring buffer with the last chars of captured output of an engine (CAPTURE_RING_SIZE).
+  Output of a call (*out*, then *err*) is appended as a whole, in a short critical section (a copy of chars).
+*/
+
+final class OutputRing {
+
+    private final char[] ring;
+    private int head; // next position to write
+    private boolean full;
+
+    OutputRing (final int size) {
+        ring = new char [size];
+    }
+
+    synchronized void append (final String out, final String err) {
+        append (out);
+        append (err);
+    }
+
+    private void append (final String s) {
+        int len = s.length (), off = Math.max (0, len - ring.length);
+        if (len - off >= ring.length) {
+            s.getChars (off, len, ring, 0);
+            head = 0;
+            full = true;
+            return;
+        }
+        int n = Math.min (len - off, ring.length - head);
+        s.getChars (off, off + n, ring, head);
+        s.getChars (off + n, len, ring, 0);
+        if (head + (len - off) >= ring.length)
+            full = true;
+        head = (head + (len - off)) % ring.length;
+    }
+
+    @Override
+    public synchronized String toString () {
+        return full ? new StringBuilder (ring.length).append (ring, head, ring.length - head).append (ring, 0, head).toString ()
+            : new String (ring, 0, head);
+    }
+}
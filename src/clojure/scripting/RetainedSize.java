@@ -0,0 +1,49 @@
+package clojure.scripting;
+
+/*
+  Immutable snapshot of memory, retained by a compiled script (ClojureScript): compiled functions per Namespace,
+  their generated classes (metaspace), and the form, kept for recompilation
+*/
+
+public final class RetainedSize {
+
+    private final int namespaces;
+    private final int variants;
+    private final int classes;
+    private final int formSize;
+
+    RetainedSize (final int namespaces, final int variants, final int classes, final int formSize) {
+        this.namespaces = namespaces;
+        this.variants = variants;
+        this.classes = classes;
+        this.formSize = formSize;
+    }
+
+    // Namespaces with compiled functions of the script (more than one with NS_PER_CONTEXT)
+    public int getNamespaceCount () {
+        return namespaces;
+    }
+
+    // Compiled functions, specialized and generic, in all Namespaces
+    public int getVariantCount () {
+        return variants;
+    }
+
+    // Classes, generated for compiled functions (-1 if not known)
+    public int getClassCount () {
+        return classes;
+    }
+
+    // Nodes (collections and atoms) of the parsed form, 0 if the form is released (no recompilation is possible)
+    public int getFormSize () {
+        return formSize;
+    }
+
+    @Override
+    public String toString () {
+        return new StringBuilder ("RetainedSize{namespaces=").append (namespaces)
+            .append (", variants=").append (variants)
+            .append (", classes=").append (classes)
+            .append (", formSize=").append (formSize).append ('}').toString ();
+    }
+}
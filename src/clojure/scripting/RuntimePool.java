@@ -0,0 +1,221 @@
+package clojure.scripting;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.lang.reflect.Method;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/*
+  Pool of independent Clojure runtimes: each one is Clojure and this engine, loaded by a child-first class loader of its own,
+  so RT, Namespaces, interned Vars, class loaders and static state of the factory (NS_FORCED, caches, pools) are not shared.
+  A runtime is created (and the Clojure runtime initialized) on first use of its slot. Engines are assigned to runtimes
+  round-robin (getScriptEngine ()) or by tenant (hash of the key), and implement javax.script interfaces only:
+  ClojureScriptEngine, ClojureScript and Clojure values (persistent collections, Keywords) are classes of the runtime,
+  not of the caller. Other classes (Java, application) are shared, loaded by the parent loader.
+  discard (i) drops a runtime (the next engine of the slot gets a new one) and stops its threads (agents and futures,
+  async executor, watchdog); its memory is reclaimed, when its engines and their values are gone.
+  Engines of a discarded runtime must not be used.
+*/
+
+public final class RuntimePool implements Closeable {
+
+    // Resources, whose class path roots (jars or directories) form a runtime: Clojure, spec (for macro checks) and this engine
+    private static final String[] RUNTIME_RESOURCES = {
+        "clojure/lang/RT.class",
+        "clojure/spec/alpha.clj",
+        "clojure/core/specs/alpha.clj",
+        ClojureEngineFactory.class.getName ().replace ('.', '/') + ".class"
+    };
+
+    private final URL[] urls;
+    private final ClassLoader parent;
+    private final AtomicReferenceArray<IsolatedRuntime> runtimes;
+    private final Object[] locks;
+    private final AtomicInteger next = new AtomicInteger ();
+
+    // Runtimes from the class path of this engine (the loader of ClojureEngineFactory)
+    public RuntimePool (final int size) {
+        this (size, findRuntimeURLs (ClojureEngineFactory.class.getClassLoader ()));
+    }
+
+    // Runtimes from the jars or directories with Clojure and this engine
+    public RuntimePool (final int size, final URL... urls) {
+        if (size <= 0)
+            throw new IllegalArgumentException ("size must be positive: " + size);
+
+        this.urls = urls.clone ();
+        this.parent = ClojureEngineFactory.class.getClassLoader ();
+        this.runtimes = new AtomicReferenceArray<IsolatedRuntime> (size);
+        this.locks = new Object [size];
+        for (int i = 0; i < size; i++)
+            locks[i] = new Object ();
+    }
+
+    public int size () {
+        return runtimes.length ();
+    }
+
+    // Engine of the next runtime (round-robin)
+    public ScriptEngine getScriptEngine () {
+        return getFactory ((next.getAndIncrement () & Integer.MAX_VALUE) % size ()).getScriptEngine ();
+    }
+
+    // Engine of the runtime of the tenant: engines of a tenant share the runtime
+    public ScriptEngine getScriptEngine (final Object tenant) {
+        return getFactory (indexOf (tenant)).getScriptEngine ();
+    }
+
+    public int indexOf (final Object tenant) {
+        if (tenant == null)
+            throw new NullPointerException ("tenant is null");
+
+        int h = tenant.hashCode ();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % size ();
+    }
+
+    // Factory (ClojureEngineFactory of the runtime) of the slot, the runtime is created on first use
+    public ScriptEngineFactory getFactory (final int index) {
+        IsolatedRuntime r = runtimes.get (index);
+        if (r != null)
+            return r.factory;
+
+        synchronized (locks[index]) {
+            r = runtimes.get (index);
+            if (r == null) {
+                r = new IsolatedRuntime (new RuntimeLoader (urls, parent));
+                runtimes.set (index, r);
+            }
+            return r.factory;
+        }
+    }
+
+    // Drops the runtime of the slot, the next engine of the slot gets a new runtime
+    public void discard (final int index) {
+        IsolatedRuntime r;
+        synchronized (locks[index]) {
+            r = runtimes.getAndSet (index, null);
+        }
+        if (r != null)
+            r.close ();
+    }
+
+    @Override
+    public void close () {
+        for (int i = 0; i < size (); i++)
+            discard (i);
+    }
+
+    static URL[] findRuntimeURLs (final ClassLoader loader) {
+        Set<URL> roots = new LinkedHashSet<URL> ();
+        for (String name : RUNTIME_RESOURCES) {
+            URL u = loader.getResource (name);
+            if (u == null)
+                throw new IllegalStateException ("Not found on the class path: " + name);
+            String s = u.toString ();
+            try {
+                roots.add (new URL ("jar".equals (u.getProtocol ()) ? s.substring (4, s.lastIndexOf ("!/"))
+                                    : s.substring (0, s.length () - name.length ())));
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException ("Unexpected location of " + name + ": " + s, e);
+            }
+        }
+        return roots.toArray (new URL [roots.size ()]);
+    }
+
+    private static final class IsolatedRuntime {
+
+        private final RuntimeLoader loader;
+        private final ScriptEngineFactory factory;
+
+        /*
+          RT is initialized (clojure.core loaded) with the runtime loader as the context class loader. Then the runtime
+          is made independent of the context class loader of calling threads: *use-context-classloader* is turned off,
+          and the root of Compiler/LOADER (the parent of loaders of RT.makeClassLoader, which always uses the context
+          class loader otherwise) is a DynamicClassLoader of the runtime loader.
+        */
+        IsolatedRuntime (final RuntimeLoader loader) {
+            this.loader = loader;
+            Thread t = Thread.currentThread ();
+            ClassLoader ccl = t.getContextClassLoader ();
+            t.setContextClassLoader (loader);
+            try {
+                Class<?> rt = Class.forName ("clojure.lang.RT", true, loader);
+                bindRoot (rt.getField ("USE_CONTEXT_CLASSLOADER").get (null), Boolean.FALSE);
+                bindRoot (loader.loadClass ("clojure.lang.Compiler").getField ("LOADER").get (null),
+                          loader.loadClass ("clojure.lang.DynamicClassLoader").getConstructor (ClassLoader.class).newInstance (loader));
+                factory = (ScriptEngineFactory) loader.loadClass (ClojureEngineFactory.class.getName ()).getDeclaredConstructor ().newInstance ();
+            } catch (Exception e) {
+                close ();
+                throw new IllegalStateException ("Cannot create Clojure runtime", e);
+            } finally {
+                t.setContextClassLoader (ccl);
+            }
+        }
+
+        private static void bindRoot (final Object var, final Object value) throws Exception {
+            var.getClass ().getMethod ("bindRoot", Object.class).invoke (var, value);
+        }
+
+        void close () {
+            if (factory != null)
+                try {
+                    Method shutdown = factory.getClass ().getDeclaredMethod ("shutdownRuntime");
+                    shutdown.setAccessible (true);
+                    shutdown.invoke (null);
+                } catch (Exception e) {}
+            try {
+                if (loader instanceof Closeable) // Java 7+
+                    ((Closeable) loader).close ();
+            } catch (IOException e) {}
+        }
+    }
+
+    /*
+      Child-first for Clojure (clojure.*: Clojure, spec, this engine, compiled libs) classes and resources,
+      parent-first for the rest.
+    */
+    private static final class RuntimeLoader extends URLClassLoader {
+
+        RuntimeLoader (final URL[] urls, final ClassLoader parent) {
+            super (urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass (final String name, final boolean resolve) throws ClassNotFoundException {
+            if (! name.startsWith ("clojure."))
+                return super.loadClass (name, resolve);
+
+            synchronized (this) {
+                Class<?> c = findLoadedClass (name);
+                if (c == null)
+                    try {
+                        c = findClass (name);
+                    } catch (ClassNotFoundException e) {
+                        c = getParent ().loadClass (name);
+                    }
+                if (resolve)
+                    resolveClass (c);
+                return c;
+            }
+        }
+
+        @Override
+        public URL getResource (final String name) {
+            URL u = name.startsWith ("clojure/") ? findResource (name) : null;
+            return u != null ? u : super.getResource (name);
+        }
+    }
+}
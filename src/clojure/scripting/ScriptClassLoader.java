@@ -0,0 +1,81 @@
+package clojure.scripting;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import java.util.Collections;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import clojure.lang.DynamicClassLoader;
+
+/*
+  DynamicClassLoader of compiled scripts, which counts loaders created, classes defined and classes unloaded.
+  A loader is tracked by a weak reference: when it is collected, all classes, it defined, are unloadable (counted as unloaded).
+  Classes are still registered in Clojure's class cache by name (soft references), so they unload under memory pressure.
+*/
+
+final class ScriptClassLoader extends DynamicClassLoader {
+
+    private static final AtomicLong CREATED = new AtomicLong ();
+    private static final AtomicLong DEFINED = new AtomicLong ();
+    private static final AtomicLong UNLOADED = new AtomicLong ();
+    private static final ReferenceQueue<ScriptClassLoader> COLLECTED = new ReferenceQueue<ScriptClassLoader> ();
+    private static final Set<Ref> LIVE = Collections.newSetFromMap (new ConcurrentHashMap<Ref, Boolean> ());
+
+    private static final class Ref extends WeakReference<ScriptClassLoader> {
+
+        private final AtomicInteger defined = new AtomicInteger (); // outlives the loader
+
+        Ref (final ScriptClassLoader loader) {
+            super (loader, COLLECTED);
+        }
+    }
+
+    private final Ref ref;
+
+    ScriptClassLoader (final ClassLoader parent) {
+        super (parent);
+        expunge ();
+        ref = new Ref (this);
+        LIVE.add (ref);
+        CREATED.incrementAndGet ();
+    }
+
+    @Override
+    public Class<?> defineClass (final String name, final byte[] bytes, final Object srcForm) {
+        Class<?> c = super.defineClass (name, bytes, srcForm);
+        ref.defined.incrementAndGet ();
+        DEFINED.incrementAndGet ();
+        return c;
+    }
+
+    // Classes, defined by this loader
+    int size () {
+        return ref.defined.get ();
+    }
+
+    static long createdCount () {
+        return CREATED.get ();
+    }
+
+    static long definedCount () {
+        return DEFINED.get ();
+    }
+
+    static long unloadedCount () {
+        expunge ();
+        return UNLOADED.get ();
+    }
+
+    private static void expunge () {
+        for (Reference<? extends ScriptClassLoader> r; (r = COLLECTED.poll ()) != null;) {
+            LIVE.remove (r);
+            UNLOADED.addAndGet (((Ref) r).defined.get ());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package clojure.scripting;
+
+/*
+  Instrumentation SPI: listeners are registered via ClojureEngineFactory.addListener and called synchronously,
+  on the calling thread, so implementations must be fast and thread safe. Exceptions of listeners are ignored.
+  Without listeners (and METRICS) the engine does not measure anything.
+*/
+
+public interface ScriptListener {
+
+    enum Operation {
+        EVAL,            // ScriptEngine.eval
+        EVAL_COMPILED,   // CompiledScript.eval
+        EVAL_BATCH,      // ClojureScript.evalAll (one per batch or chunk)
+        INVOKE_FUNCTION, // Invocable.invokeFunction/invokeMethod/getInterface (Proxy), FunctionHandle.invokeFunction
+        COMPILE          // compilation of a script for another Namespace (NS_PER_CONTEXT)
+    }
+
+    /*
+      Script compiled by Compilable.compile (or for the eval cache); nanos: time of compilation
+    */
+    void compiled (long nanos, boolean failed);
+
+    /*
+      Call with thread bindings of the engine; nanos: time of the call, including the set up of thread bindings
+    */
+    void called (Operation operation, long nanos, boolean failed);
+
+    /*
+      Thread bindings frame of the given number of Vars (engine's and Bindings) is pushed for a call
+    */
+    void bound (int size);
+}
@@ -0,0 +1,346 @@
+package clojure.scripting;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javax.script.ScriptException;
+
+/*
+  Scripts (files with extensions of the factory, .clj) under directories and classpath roots, by name: relative path
+  without the extension ("rules/discount"). The first root with the script wins. A script is compiled by the engine
+  on first use (get), and recompiled by refresh, when its file changed (modification time, length), or a script
+  in a preceding root appeared. Entries are immutable and swapped atomically: callers get the old or the new script,
+  unchanged scripts are not touched, a failed recompilation keeps the old one. A recompiled script must compile
+  with the Bindings of the engine (as by compileAll), so a compile error is a failure, not a broken script swapped in.
+  Scripts in jars are never recompiled.
+  startPolling refreshes periodically (by a shared daemon thread) until close.
+*/
+
+public final class ScriptRepository implements Closeable {
+
+    private static ScheduledThreadPoolExecutor poller; // guarded by ScriptRepository.class, created on first use
+
+    private final ClojureScriptEngine engine;
+    private final List<String> extensions;
+    private final List<Object> roots = new CopyOnWriteArrayList<Object> (); // File or ClasspathRoot
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry> ();
+    private Future<?> polling; // guarded by this
+
+    public ScriptRepository (final ClojureScriptEngine engine) {
+        if (engine == null)
+            throw new NullPointerException ("engine is null");
+
+        this.engine = engine;
+        this.extensions = engine.getFactory ().getExtensions ();
+    }
+
+    public ScriptRepository addDirectory (final File dir) {
+        if (dir == null)
+            throw new NullPointerException ("dir is null");
+
+        roots.add (dir);
+        return this;
+    }
+
+    // Resources under the root ("" for the whole classpath) of the class loader
+    public ScriptRepository addClasspath (final ClassLoader loader, final String root) {
+        if (loader == null || root == null)
+            throw new NullPointerException ("loader or root is null");
+
+        roots.add (new ClasspathRoot (loader, root));
+        return this;
+    }
+
+    // Compiled script, null if there is no script with the name
+    public ClojureScript get (final String name) throws ScriptException {
+        Entry e = entries.get (checkName (name));
+        if (e != null)
+            return e.script;
+
+        Source s = locate (name);
+        if (s == null)
+            return null;
+        e = compile (name, s, false);
+        Entry e0 = entries.putIfAbsent (name, e);
+        return e0 != null ? e0.script : e.script;
+    }
+
+    // Names of compiled scripts
+    public Set<String> loaded () {
+        return new TreeSet<String> (entries.keySet ());
+    }
+
+    // Names of all scripts of the roots
+    public Set<String> names () throws IOException {
+        Set<String> names = new TreeSet<String> ();
+        for (Object root : roots)
+            if (root instanceof File)
+                scan ((File) root, "", names);
+            else {
+                ClasspathRoot cr = (ClasspathRoot) root;
+                for (Enumeration<URL> us = cr.loader.getResources (cr.path); us.hasMoreElements ();) {
+                    URL u = us.nextElement ();
+                    File dir = toFile (u);
+                    if (dir != null)
+                        scan (dir, "", names);
+                    else if ("jar".equals (u.getProtocol ()))
+                        scan ((JarURLConnection) u.openConnection (), cr.path, names);
+                }
+            }
+        return names;
+    }
+
+    /*
+      Recompiles changed scripts, removes deleted ones. Returns recompiled scripts and failures of recompilation
+      (reported once per change of the file).
+    */
+    public synchronized CompileReport refresh () {
+        long t0 = System.nanoTime ();
+        Map<String, ClojureScript> scripts = new LinkedHashMap<String, ClojureScript> ();
+        Map<String, ScriptException> failures = new LinkedHashMap<String, ScriptException> ();
+        for (Entry e : entries.values ()) {
+            Source s = locate (e.name);
+            if (s == null) {
+                entries.remove (e.name, e);
+                continue;
+            }
+            if (s.equals (e.source) || s.equals (e.failed))
+                continue;
+
+            try {
+                Entry e1 = compile (e.name, s, true);
+                if (entries.replace (e.name, e, e1))
+                    scripts.put (e.name, e1.script);
+            } catch (ScriptException x) {
+                entries.replace (e.name, e, new Entry (e.name, e.source, e.script, s));
+                failures.put (e.name, x);
+            }
+        }
+        return new CompileReport (scripts, failures, scripts.size () + failures.size (), System.nanoTime () - t0);
+    }
+
+    // Refreshes every millis milliseconds, until close (or startPolling again)
+    public synchronized void startPolling (final long millis) {
+        if (millis <= 0)
+            throw new IllegalArgumentException ("interval must be positive: " + millis);
+
+        close ();
+        polling = poller ().scheduleWithFixedDelay (new Runnable () {
+                @Override
+                public void run () {
+                    try {
+                        refresh ();
+                    } catch (RuntimeException e) {} // keep polling
+                }}, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    // Stops polling; compiled scripts remain usable
+    @Override
+    public synchronized void close () {
+        if (polling != null) {
+            polling.cancel (false);
+            polling = null;
+        }
+    }
+
+    // The shared poller thread; created again, if it was shut down
+    private static synchronized ScheduledThreadPoolExecutor poller () {
+        if (poller == null || poller.isShutdown ())
+            poller = new ScheduledThreadPoolExecutor (1, new ThreadFactory () {
+                    @Override
+                    public Thread newThread (final Runnable r) {
+                        Thread t = new Thread (r, ScriptRepository.class.getName () + ".poller");
+                        t.setDaemon (true);
+                        return t;
+                    }});
+        return poller;
+    }
+
+    // Stops the poller thread, if any (discard of a runtime): polling repositories stop refreshing until startPolling
+    static synchronized void shutdownPoller () {
+        if (poller != null)
+            poller.shutdownNow ();
+        poller = null;
+    }
+
+    // strict: compile errors are thrown, not deferred to eval
+    private Entry compile (final String name, final Source s, final boolean strict) throws ScriptException {
+        String source;
+        try { // the stamp is taken before reading, so a change while reading is seen by the next refresh
+            Reader r = new InputStreamReader (s.file != null ? new FileInputStream (s.file) : s.url.openStream (), "UTF-8");
+            try {
+                StringBuilder sb = new StringBuilder ();
+                char[] buf = new char [4096];
+                for (int n; (n = r.read (buf)) != -1;)
+                    sb.append (buf, 0, n);
+                source = sb.toString ();
+            } finally {
+                r.close ();
+            }
+        } catch (IOException e) {
+            throw (ScriptException) new ScriptException (e.toString (), s.key, -1).initCause (e);
+        }
+        if (! strict)
+            return new Entry (name, s, engine.compile (source), null);
+
+        CompileReport report = engine.compileAll (Collections.singletonMap (name, source));
+        ScriptException x = report.getFailures ().get (name);
+        if (x != null)
+            throw x;
+        return new Entry (name, s, report.getScripts ().get (name), null);
+    }
+
+    private Source locate (final String name) {
+        for (Object root : roots)
+            for (String ext : extensions) {
+                String path = name + "." + ext;
+                if (root instanceof File) {
+                    File f = new File ((File) root, path);
+                    if (f.isFile ())
+                        return new Source (f, null);
+                } else {
+                    ClasspathRoot cr = (ClasspathRoot) root;
+                    URL u = cr.loader.getResource (cr.path.length () == 0 ? path : cr.path + "/" + path);
+                    if (u != null) {
+                        File f = toFile (u);
+                        return f != null ? new Source (f, null) : new Source (null, u);
+                    }
+                }
+            }
+        return null;
+    }
+
+    private void scan (final File dir, final String prefix, final Set<String> names) {
+        File[] fs = dir.listFiles ();
+        if (fs != null)
+            for (File f : fs)
+                if (f.isDirectory ())
+                    scan (f, prefix + f.getName () + "/", names);
+                else
+                    addName (prefix + f.getName (), names);
+    }
+
+    private void scan (final JarURLConnection c, final String path, final Set<String> names) throws IOException {
+        c.setUseCaches (false);
+        JarFile jar = c.getJarFile ();
+        try {
+            String prefix = path.length () == 0 ? "" : path + "/";
+            for (Enumeration<JarEntry> es = jar.entries (); es.hasMoreElements ();) {
+                JarEntry e = es.nextElement ();
+                if (! e.isDirectory () && e.getName ().startsWith (prefix))
+                    addName (e.getName ().substring (prefix.length ()), names);
+            }
+        } finally {
+            jar.close ();
+        }
+    }
+
+    private void addName (final String path, final Set<String> names) {
+        for (String ext : extensions)
+            if (path.endsWith ("." + ext))
+                names.add (path.substring (0, path.length () - ext.length () - 1));
+    }
+
+    private static File toFile (final URL u) {
+        if (! "file".equals (u.getProtocol ()))
+            return null;
+        try {
+            return new File (u.toURI ());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    // Relative path with "/", without "." and ".." segments
+    private static String checkName (final String name) {
+        if (name == null)
+            throw new NullPointerException ("name is null");
+        for (String segment : name.split ("/", -1))
+            if (segment.length () == 0 || segment.equals (".") || segment.equals ("..") || segment.indexOf ('\\') >= 0)
+                throw new IllegalArgumentException ("Invalid script name: " + name);
+        return name;
+    }
+
+    private static final class ClasspathRoot {
+
+        private final ClassLoader loader;
+        private final String path;
+
+        ClasspathRoot (final ClassLoader loader, final String path) {
+            this.loader = loader;
+            this.path = path.endsWith ("/") ? path.substring (0, path.length () - 1) : path;
+        }
+    }
+
+    // Location of a script with its modification time and length, when located (a file), or a resource (never changes)
+    private static final class Source {
+
+        private final File file;
+        private final URL url;
+        private final String key;
+        private final long modified;
+        private final long length;
+
+        Source (final File file, final URL url) {
+            this.file = file;
+            this.url = url;
+            this.key = file != null ? file.getPath () : url.toString ();
+            this.modified = file != null ? file.lastModified () : 0;
+            this.length = file != null ? file.length () : -1;
+        }
+
+        @Override
+        public boolean equals (final Object o) {
+            if (! (o instanceof Source))
+                return false;
+            Source s = (Source) o;
+            return key.equals (s.key) && modified == s.modified && length == s.length;
+        }
+
+        @Override
+        public int hashCode () {
+            return key.hashCode ();
+        }
+    }
+
+    private static final class Entry {
+
+        private final String name;
+        private final Source source;
+        private final ClojureScript script;
+        private final Source failed; // source of the last failed recompilation, if any
+
+        Entry (final String name, final Source source, final ClojureScript script, final Source failed) {
+            this.name = name;
+            this.source = source;
+            this.script = script;
+            this.failed = failed;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package clojure.scripting;
+
+import javax.script.ScriptException;
+
+/*
+  Call of an engine exceeded its time (ClojureScriptEngine.setTimeout, ClojureScriptEngine.TIMEOUT) or checkpoint budget
+*/
+
+public class ScriptTimeoutException extends ScriptException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long timeout;
+    private final long elapsed;
+
+    ScriptTimeoutException (final String message, final long timeout, final long elapsed) {
+        super (message);
+        this.timeout = timeout;
+        this.elapsed = elapsed;
+    }
+
+    /*
+      Time budget of the call in milliseconds, 0 if the call exceeded the checkpoint budget only
+    */
+    public long getTimeoutMillis () {
+        return timeout;
+    }
+
+    public long getElapsedMillis () {
+        return elapsed;
+    }
+}
@@ -0,0 +1,55 @@
+package clojure.scripting;
+
+/*
+  Immutable snapshot of variants of a compiled script (ClojureScript), specialized by classes of bound values
+*/
+
+public final class SpecializationStatistics {
+
+    private final int variants;
+    private final int limit;
+    private final boolean generic;
+    private final int reflectiveSites;
+    private final long reflectiveCalls;
+
+    SpecializationStatistics (final int variants, final int limit, final boolean generic, final int reflectiveSites, final long reflectiveCalls) {
+        this.variants = variants;
+        this.limit = limit;
+        this.generic = generic;
+        this.reflectiveSites = reflectiveSites;
+        this.reflectiveCalls = reflectiveCalls;
+    }
+
+    // Specialized variants (per Namespace, up to the limit)
+    public int getVariantCount () {
+        return variants;
+    }
+
+    public int getLimit () {
+        return limit;
+    }
+
+    // Generic variant is compiled: more classes of values were seen than the limit
+    public boolean isGeneric () {
+        return generic;
+    }
+
+    // Reflective call sites in all compiled variants (not known for variants, loaded from the class cache)
+    public int getReflectiveSiteCount () {
+        return reflectiveSites;
+    }
+
+    // Calls of variants with reflective call sites
+    public long getReflectiveCallCount () {
+        return reflectiveCalls;
+    }
+
+    @Override
+    public String toString () {
+        return new StringBuilder ("SpecializationStatistics{variants=").append (variants)
+            .append (", limit=").append (limit)
+            .append (", generic=").append (generic)
+            .append (", reflectiveSites=").append (reflectiveSites)
+            .append (", reflectiveCalls=").append (reflectiveCalls).append ('}').toString ();
+    }
+}
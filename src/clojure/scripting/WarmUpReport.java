@@ -0,0 +1,77 @@
+package clojure.scripting;
+
+import java.util.Collections;
+import java.util.Map;
+
+/*
+  Result of ClojureEngineFactory.warmUp: times of its steps and failures of libs and scripts
+*/
+
+public final class WarmUpReport {
+
+    private final long runtimeNanos;
+    private final long libsNanos;
+    private final long namespacesNanos;
+    private final long scriptsNanos;
+    private final int namespaces;
+    private final int scripts;
+    private final int compiled;
+    private final Map<String, Exception> failures;
+
+    WarmUpReport (final long runtimeNanos, final long libsNanos, final long namespacesNanos, final long scriptsNanos,
+                  final int namespaces, final int scripts, final int compiled, final Map<String, Exception> failures) {
+        this.runtimeNanos = runtimeNanos;
+        this.libsNanos = libsNanos;
+        this.namespacesNanos = namespacesNanos;
+        this.scriptsNanos = scriptsNanos;
+        this.namespaces = namespaces;
+        this.scripts = scripts;
+        this.compiled = compiled;
+        this.failures = Collections.unmodifiableMap (failures);
+    }
+
+    // Initialization of the Clojure runtime and prototype Namespace (by warmUp or earlier by the first engine)
+    public double getRuntimeMillis () {
+        return runtimeNanos / 1e6;
+    }
+
+    public double getLibsMillis () {
+        return libsNanos / 1e6;
+    }
+
+    public double getNamespacesMillis () {
+        return namespacesNanos / 1e6;
+    }
+
+    public double getScriptsMillis () {
+        return scriptsNanos / 1e6;
+    }
+
+    // Namespaces, created for the pool (NS_POOL_SIZE)
+    public int getNamespaceCount () {
+        return namespaces;
+    }
+
+    public int getScriptCount () {
+        return scripts;
+    }
+
+    // Scripts compiled ahead of execution: all their symbols are resolved without Bindings
+    public int getCompiledCount () {
+        return compiled;
+    }
+
+    // Failed libs and scripts
+    public Map<String, Exception> getFailures () {
+        return failures;
+    }
+
+    @Override
+    public String toString () {
+        return new StringBuilder ("WarmUpReport{runtime=").append (getRuntimeMillis ()).append (" ms")
+            .append (", libs=").append (getLibsMillis ()).append (" ms")
+            .append (", namespaces=").append (namespaces).append (" in ").append (getNamespacesMillis ()).append (" ms")
+            .append (", scripts=").append (scripts).append (" (").append (compiled).append (" compiled) in ").append (getScriptsMillis ()).append (" ms")
+            .append (", failures=").append (failures.keySet ()).append ('}').toString ();
+    }
+}
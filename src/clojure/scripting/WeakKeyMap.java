@@ -0,0 +1,69 @@
+package clojure.scripting;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import java.util.Collection;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  Concurrent map with weak keys, compared by identity. Entries of collected keys are removed (evicted)
+  by the next operation, so values do not outlive their keys for long.
+*/
+
+final class WeakKeyMap<K, V> {
+
+    private final ConcurrentHashMap<Key<K>, V> map = new ConcurrentHashMap<Key<K>, V> ();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<K> ();
+
+    private static final class Key<K> extends WeakReference<K> {
+
+        private final int hash;
+
+        Key (final K k, final ReferenceQueue<K> q) {
+            super (k, q);
+            hash = System.identityHashCode (k);
+        }
+
+        @Override
+        public int hashCode () {
+            return hash;
+        }
+
+        @Override
+        public boolean equals (final Object o) {
+            if (o == this)
+                return true;
+            Object k = get ();
+            return k != null && o instanceof Key && ((Key) o).get () == k;
+        }
+    }
+
+    V get (final K k) {
+        expunge ();
+        return map.get (new Key<K> (k, null));
+    }
+
+    void put (final K k, final V v) {
+        expunge ();
+        map.put (new Key<K> (k, queue), v);
+    }
+
+    Collection<V> values () {
+        expunge ();
+        return map.values ();
+    }
+
+    int size () {
+        expunge ();
+        return map.size ();
+    }
+
+    @SuppressWarnings ("unchecked")
+    private void expunge () {
+        for (Reference<? extends K> ref; (ref = queue.poll ()) != null;)
+            map.remove ((Key<K>) ref);
+    }
+}